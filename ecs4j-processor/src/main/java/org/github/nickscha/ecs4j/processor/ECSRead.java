@@ -0,0 +1,36 @@
+/*
+ * Copyright (C) 2019 nickscha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.github.nickscha.ecs4j.processor;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Declares that an {@link ECSUpdate} method only reads the component passed as
+ * this parameter. Parameters without {@link ECSRead} or {@link ECSWrite} are
+ * treated as read, their component types are not reported by
+ * {@code writes()} of the generated system.
+ *
+ * @author nickscha
+ * @since 0.0.1
+ */
+@Retention(RetentionPolicy.SOURCE)
+@Target(ElementType.PARAMETER)
+public @interface ECSRead {
+
+}
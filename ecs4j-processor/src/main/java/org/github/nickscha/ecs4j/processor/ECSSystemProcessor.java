@@ -0,0 +1,288 @@
+/*
+ * Copyright (C) 2019 nickscha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.github.nickscha.ecs4j.processor;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.tools.Diagnostic;
+
+/**
+ * ECS4J System Processor
+ * <p>
+ * Generates an {@code ECSBatchSystem} for every method annotated with
+ * {@link ECSUpdate}. The generated system declares the archetype and the
+ * written components ({@code writes()}) from the method parameters and calls
+ * the method directly for every entity of a batch, without reflection. The
+ * indices of the parameters within the component list are resolved once and
+ * reused as long as the following entities share the same layout, which is
+ * the case within a composition unless the components were added in a
+ * different order. The layout is checked by the exact class of each
+ * component, so the parameter types have to be final classes. The indices are
+ * kept in the generated system, so an instance must not be shared between
+ * worlds which are updated concurrently.
+ * </p>
+ *
+ * @author nickscha
+ * @since 0.0.1
+ */
+public final class ECSSystemProcessor extends AbstractProcessor {
+
+    private static final String COMPONENT = "org.github.nickscha.ecs4j.ECSComponent";
+
+    @Override
+    public Set<String> getSupportedAnnotationTypes() {
+        return new HashSet<>(Arrays.asList(ECSUpdate.class.getCanonicalName(), ECSRead.class.getCanonicalName(), ECSWrite.class.getCanonicalName()));
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        for (Element element : roundEnv.getElementsAnnotatedWith(ECSUpdate.class)) {
+            if (element.getKind() != ElementKind.METHOD) {
+                continue;
+            }
+            final ExecutableElement method = (ExecutableElement) element;
+            if (validate(method)) {
+                generate(method);
+            }
+        }
+        return true;
+    }
+
+    private boolean validate(ExecutableElement method) {
+        if (method.getModifiers().contains(Modifier.PRIVATE)) {
+            return error(method, "@ECSUpdate methods must not be private");
+        }
+        if (method.getReturnType().getKind() != TypeKind.VOID) {
+            return error(method, "@ECSUpdate methods must return void");
+        }
+        if (method.getParameters().isEmpty()) {
+            return error(method, "@ECSUpdate methods require at least one component parameter");
+        }
+        final TypeMirror component = processingEnv.getElementUtils().getTypeElement(COMPONENT).asType();
+        final Set<String> types = new HashSet<>();
+        for (VariableElement parameter : method.getParameters()) {
+            final TypeMirror type = parameter.asType();
+            if (type.getKind() != TypeKind.DECLARED || !((DeclaredType) type).getTypeArguments().isEmpty()) {
+                return error(parameter, "@ECSUpdate parameters must be non generic component classes");
+            }
+            if (!processingEnv.getTypeUtils().isAssignable(type, component)) {
+                return error(parameter, "@ECSUpdate parameters must implement ECSComponent");
+            }
+            final Element element = ((DeclaredType) type).asElement();
+            if (element.getKind() != ElementKind.CLASS || !element.getModifiers().contains(Modifier.FINAL)) {
+                return error(parameter, "@ECSUpdate parameters must be final classes, components are matched by their exact class");
+            }
+            if (!types.add(type.toString())) {
+                return error(parameter, "An entity can only contain one component of the same class");
+            }
+            if (parameter.getAnnotation(ECSRead.class) != null && parameter.getAnnotation(ECSWrite.class) != null) {
+                return error(parameter, "A parameter is either @ECSRead or @ECSWrite");
+            }
+        }
+        return true;
+    }
+
+    private boolean error(Element element, String message) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+        return false;
+    }
+
+    private void generate(ExecutableElement method) {
+        final TypeElement owner = (TypeElement) method.getEnclosingElement();
+        final String packageName = processingEnv.getElementUtils().getPackageOf(owner).getQualifiedName().toString();
+        final String ownerName = owner.getQualifiedName().toString();
+        final String name = flatName(owner) + "_" + Character.toUpperCase(method.getSimpleName().charAt(0)) + method.getSimpleName().toString().substring(1) + "System";
+        final boolean isStatic = method.getModifiers().contains(Modifier.STATIC);
+
+        final List<String> params = new ArrayList<>();
+        final List<String> writes = new ArrayList<>();
+        for (VariableElement parameter : method.getParameters()) {
+            final String type = processingEnv.getTypeUtils().erasure(parameter.asType()).toString();
+            params.add(type);
+            if (parameter.getAnnotation(ECSWrite.class) != null) {
+                writes.add(type);
+            }
+        }
+
+        final StringBuilder sb = new StringBuilder();
+        if (!packageName.isEmpty()) {
+            sb.append("package ").append(packageName).append(";\n\n");
+        }
+        sb.append("import java.util.Arrays;\n");
+        sb.append("import java.util.Collections;\n");
+        sb.append("import java.util.List;\n");
+        sb.append("import org.github.nickscha.ecs4j.ECSArchetype;\n");
+        sb.append("import org.github.nickscha.ecs4j.ECSBatch;\n");
+        sb.append("import org.github.nickscha.ecs4j.ECSBatchSystem;\n");
+        sb.append("import org.github.nickscha.ecs4j.ECSComponent;\n\n");
+        sb.append("/**\n");
+        sb.append(" * Generated by ").append(ECSSystemProcessor.class.getName()).append(" for {@link ").append(ownerName).append("#").append(method.getSimpleName()).append("}.\n");
+        sb.append(" */\n");
+        sb.append("public final class ").append(name).append(" implements ECSBatchSystem {\n\n");
+        sb.append("    private static final List<Class<? extends ECSComponent>> WRITES = ").append(classList(writes)).append(";\n\n");
+        sb.append("    // the indices of the parameters within the component list of the last entity\n");
+        sb.append("    private final int[] index = new int[").append(params.size()).append("];\n\n");
+        if (!isStatic) {
+            sb.append("    private final ").append(ownerName).append(" target;\n\n");
+            sb.append("    public ").append(name).append("(").append(ownerName).append(" target) {\n");
+            sb.append("        this.target = target;\n");
+            sb.append("    }\n\n");
+        }
+
+        final String call = (isStatic ? ownerName : "target") + "." + method.getSimpleName();
+
+        // the indices are resolved again only if the layout changes
+        sb.append("    @Override\n");
+        sb.append("    public void update(List<ECSComponent> components) {\n");
+        sb.append("        final int[] index = this.index;\n");
+        sb.append("        if (!matches(components, index)) {\n");
+        sb.append("            resolve(components, index);\n");
+        sb.append("        }\n");
+        sb.append("        ").append(call).append("(").append(arguments(params)).append(");\n");
+        sb.append("    }\n\n");
+
+        sb.append("    @Override\n");
+        sb.append("    public void update(ECSBatch batch) {\n");
+        sb.append("        final int[] index = this.index;\n");
+        sb.append("        for (int i = 0, size = batch.size(); i < size; i++) {\n");
+        sb.append("            final List<ECSComponent> components = batch.components(i);\n");
+        sb.append("            if (!matches(components, index)) {\n");
+        sb.append("                resolve(components, index);\n");
+        sb.append("            }\n");
+        sb.append("            ").append(call).append("(").append(arguments(params)).append(");\n");
+        sb.append("        }\n");
+        sb.append("    }\n\n");
+
+        sb.append("    private static boolean matches(List<ECSComponent> components, int[] index) {\n");
+        sb.append("        final int n = components.size();\n");
+        for (int i = 0; i < params.size(); i++) {
+            sb.append(i == 0 ? "        return " : "\n                && ");
+            sb.append("index[").append(i).append("] < n && components.get(index[").append(i).append("]).getClass() == ").append(params.get(i)).append(".class");
+        }
+        sb.append(";\n");
+        sb.append("    }\n\n");
+
+        sb.append("    private static void resolve(List<ECSComponent> components, int[] index) {\n");
+        sb.append("        for (int i = 0, n = components.size(); i < n; i++) {\n");
+        sb.append("            final Class<?> type = components.get(i).getClass();\n");
+        for (int i = 0; i < params.size(); i++) {
+            sb.append(i == 0 ? "            if" : " else if").append(" (type == ").append(params.get(i)).append(".class) {\n");
+            sb.append("                index[").append(i).append("] = i;\n");
+            sb.append("            }");
+        }
+        sb.append("\n        }\n");
+        sb.append("    }\n\n");
+
+        sb.append("    @Override\n");
+        sb.append("    @SuppressWarnings(\"unchecked\")\n");
+        sb.append("    public ECSArchetype archetype() {\n");
+        sb.append("        return ECSArchetype.builder()\n");
+        sb.append("                .all(").append(classArgs(params)).append(")\n");
+        final List<String> none = none(method);
+        if (!none.isEmpty()) {
+            sb.append("                .none(").append(classArgs(none)).append(")\n");
+        }
+        sb.append("                .build();\n");
+        sb.append("    }\n\n");
+
+        sb.append("    @Override\n");
+        sb.append("    public List<Class<? extends ECSComponent>> writes() {\n");
+        sb.append("        return WRITES;\n");
+        sb.append("    }\n\n");
+        sb.append("}\n");
+
+        final String qualifiedName = packageName.isEmpty() ? name : packageName + "." + name;
+        try (Writer writer = processingEnv.getFiler().createSourceFile(qualifiedName, method).openWriter()) {
+            writer.write(sb.toString());
+        } catch (IOException ex) {
+            error(method, "Could not generate " + qualifiedName + ": " + ex.getMessage());
+        }
+    }
+
+    private List<String> none(ExecutableElement method) {
+        final List<String> none = new ArrayList<>();
+        for (AnnotationMirror mirror : method.getAnnotationMirrors()) {
+            if (!mirror.getAnnotationType().toString().equals(ECSUpdate.class.getCanonicalName())) {
+                continue;
+            }
+            for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry : mirror.getElementValues().entrySet()) {
+                if (entry.getKey().getSimpleName().contentEquals("none")) {
+                    for (Object value : (List<?>) entry.getValue().getValue()) {
+                        none.add(((AnnotationValue) value).getValue().toString());
+                    }
+                }
+            }
+        }
+        return none;
+    }
+
+    private static String flatName(TypeElement type) {
+        final Element enclosing = type.getEnclosingElement();
+        if (enclosing instanceof TypeElement) {
+            return flatName((TypeElement) enclosing) + "_" + type.getSimpleName();
+        }
+        return type.getSimpleName().toString();
+    }
+
+    private static String arguments(List<String> types) {
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < types.size(); i++) {
+            sb.append(i == 0 ? "" : ", ").append("(").append(types.get(i)).append(") components.get(index[").append(i).append("])");
+        }
+        return sb.toString();
+    }
+
+    private static String classArgs(List<String> types) {
+        final StringBuilder sb = new StringBuilder();
+        for (String type : types) {
+            sb.append(sb.length() == 0 ? "" : ", ").append(type).append(".class");
+        }
+        return sb.toString();
+    }
+
+    private static String classList(List<String> types) {
+        if (types.isEmpty()) {
+            return "Collections.emptyList()";
+        }
+        return "Collections.unmodifiableList(Arrays.<Class<? extends ECSComponent>>asList(" + classArgs(types) + "))";
+    }
+
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright (C) 2019 nickscha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.github.nickscha.ecs4j.processor;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+import org.github.nickscha.ecs4j.ECSComponent;
+
+/**
+ * Marks a method as the update method of a generated ECS system.
+ * <p>
+ * The parameters of the method define the components the system requires
+ * ({@code all} of its archetype), the parameter annotations {@link ECSRead}
+ * and {@link ECSWrite} define the access declarations. For a method
+ * {@code move} in class {@code Movement} the processor generates the system
+ * {@code Movement_MoveSystem}.
+ * </p>
+ * <b>Example:</b>
+ *
+ * <pre>
+ * public class Movement {
+ *
+ *     &#64;ECSUpdate
+ *     void move(&#64;ECSWrite Position pos, &#64;ECSRead Velocity vel) {
+ *         pos.x += vel.velX;
+ *         pos.y += vel.velY;
+ *     }
+ * }
+ *
+ * em.createSystem(new Movement_MoveSystem(new Movement()));
+ * </pre>
+ *
+ * @author nickscha
+ * @since 0.0.1
+ */
+@Retention(RetentionPolicy.SOURCE)
+@Target(ElementType.METHOD)
+public @interface ECSUpdate {
+
+    /**
+     * @return the components an entity must not have to be processed
+     */
+    Class<? extends ECSComponent>[] none() default {};
+
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright (C) 2019 nickscha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.github.nickscha.ecs4j.processor;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.Collections;
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.ToolProvider;
+import org.github.nickscha.ecs4j.ECSArchetype;
+import org.github.nickscha.ecs4j.ECSComponent;
+import org.github.nickscha.ecs4j.ECSEntityManager;
+import org.github.nickscha.ecs4j.ECSExecutors;
+import org.github.nickscha.ecs4j.ECSSystem;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ECSSystemProcessorTest {
+
+    @Test
+    public void testDeclarations() {
+        ECSSystem system = new ECSSystemProcessorTest_Movement_MoveSystem(new Movement());
+
+        Assert.assertEquals(ECSArchetype.builder().all(Position.class, Velocity.class).none(Frozen.class).build(), system.archetype());
+        Assert.assertEquals(Collections.singletonList(Position.class), system.writes());
+    }
+
+    @Test
+    public void testUpdate() {
+        ECSEntityManager em = ECSEntityManager.create().executor(ECSExecutors.callerThread());
+        em.createSystem(new ECSSystemProcessorTest_Movement_MoveSystem(new Movement()));
+        em.createSystem(new ECSSystemProcessorTest_Movement_CountSystem());
+
+        Position moving = new Position();
+        Position frozen = new Position();
+        // component order of the entity does not matter
+        em.createEntity(new Velocity(1, 2), moving);
+        em.createEntity(frozen, new Velocity(1, 2), new Frozen());
+        for (int i = 0; i < 1000; i++) {
+            em.createEntity(Arrays.asList(new Position(), new Velocity(0, 0)));
+        }
+
+        Movement.count = 0;
+        em.update();
+        em.update();
+
+        Assert.assertEquals(2, moving.x, 0);
+        Assert.assertEquals(4, moving.y, 0);
+        Assert.assertEquals(0, frozen.x, 0);
+        Assert.assertEquals(2 * 1002, Movement.count);
+    }
+
+    @Test
+    public void testMixedComponentOrder() {
+        ECSEntityManager em = ECSEntityManager.create().executor(ECSExecutors.callerThread());
+        em.createSystem(new ECSSystemProcessorTest_Movement_MoveSystem(new Movement()));
+
+        Position[] positions = new Position[600];
+        for (int i = 0; i < positions.length; i++) {
+            positions[i] = new Position();
+            // the layout changes within the batches
+            if (i % 3 == 0) {
+                em.createEntity(new Velocity(1, 1), positions[i]);
+            } else {
+                em.createEntity(new Tag(), positions[i], new Velocity(1, 1));
+            }
+        }
+        em.update();
+
+        for (Position position : positions) {
+            Assert.assertEquals(1, position.x, 0);
+        }
+    }
+
+    @Test
+    public void testPerEntityUpdate() {
+        ECSSystem system = new ECSSystemProcessorTest_Movement_MoveSystem(new Movement());
+        Position first = new Position();
+        Position second = new Position();
+
+        system.update(Arrays.asList(first, new Velocity(1, 2)));
+        system.update(Arrays.asList(new Velocity(3, 4), second));
+        system.update(Arrays.asList(first, new Velocity(1, 2)));
+        Assert.assertEquals(2, first.x, 0);
+        Assert.assertEquals(4, first.y, 0);
+        Assert.assertEquals(3, second.x, 0);
+    }
+
+    @Test
+    public void testRejectsNonFinalParameters() throws IOException {
+        final String source = "class Systems {\n"
+                + "    static class Base implements org.github.nickscha.ecs4j.ECSComponent {}\n"
+                + "    @org.github.nickscha.ecs4j.processor.ECSUpdate\n"
+                + "    void update(Base base) {}\n"
+                + "}\n";
+        final JavaFileObject file = new SimpleJavaFileObject(URI.create("string:///Systems.java"), JavaFileObject.Kind.SOURCE) {
+            @Override
+            public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+                return source;
+            }
+        };
+        final JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        final DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        final JavaCompiler.CompilationTask task = compiler.getTask(null, null, diagnostics,
+                Arrays.asList("-proc:only", "-classpath", System.getProperty("java.class.path")), null, Collections.singletonList(file));
+        task.setProcessors(Collections.singletonList(new ECSSystemProcessor()));
+
+        Assert.assertFalse(task.call());
+        Assert.assertEquals(1, diagnostics.getDiagnostics().size());
+        Assert.assertEquals(Diagnostic.Kind.ERROR, diagnostics.getDiagnostics().get(0).getKind());
+    }
+
+    static class Movement {
+
+        static int count;
+
+        @ECSUpdate(none = Frozen.class)
+        void move(@ECSWrite Position pos, @ECSRead Velocity vel) {
+            pos.x += vel.velX;
+            pos.y += vel.velY;
+        }
+
+        @ECSUpdate
+        static void count(Position pos) {
+            count++;
+        }
+    }
+
+    static final class Position implements ECSComponent {
+
+        float x, y;
+    }
+
+    static final class Velocity implements ECSComponent {
+
+        final float velX, velY;
+
+        Velocity(float velX, float velY) {
+            this.velX = velX;
+            this.velY = velY;
+        }
+    }
+
+    static final class Frozen implements ECSComponent {
+    }
+
+    static final class Tag implements ECSComponent {
+    }
+
+}
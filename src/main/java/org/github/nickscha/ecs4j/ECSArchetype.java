@@ -17,9 +17,11 @@ package org.github.nickscha.ecs4j;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
@@ -79,9 +81,59 @@ public final class ECSArchetype {
         return !(!check && any.length > 0);
     }
 
+    boolean valid(BitSet componentIds) {
+        for (int cid : none) {
+            if (componentIds.get(cid)) {
+                return false;
+            }
+        }
+        for (int cid : all) {
+            if (!componentIds.get(cid)) {
+                return false;
+            }
+        }
+        if (any.length == 0) {
+            return true;
+        }
+        for (int cid : any) {
+            if (componentIds.get(cid)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    int[] all() {
+        return all;
+    }
+
+    int[] any() {
+        return any;
+    }
+
+    int[] none() {
+        return none;
+    }
+
+    /**
+     * Removes the component ids from the constraints of this archetype. If one
+     * of the any components is removed the any constraint can no longer be
+     * decided by the remaining components and is dropped entirely.
+     *
+     * @param cids the component ids to remove
+     * @return the archetype without the component ids
+     */
+    ECSArchetype without(BitSet cids) {
+        final boolean anyRemoved = Arrays.stream(any).anyMatch(cids::get);
+        return new ECSArchetype(
+                Arrays.stream(all).filter(cid -> !cids.get(cid)).toArray(),
+                anyRemoved ? new int[0] : any,
+                Arrays.stream(none).filter(cid -> !cids.get(cid)).toArray());
+    }
+
     public static class Builder {
 
-        private static final Map<Class<? extends ECSComponent>, Integer> CLASS_2_CID = new HashMap<>(256);
+        private static final Map<Class<? extends ECSComponent>, Integer> CLASS_2_CID = new ConcurrentHashMap<>(256);
         private static final AtomicInteger CID_SEQ = new AtomicInteger(0);
 
         private List<Integer> all = new ArrayList<>(4);
@@ -103,7 +155,13 @@ public final class ECSArchetype {
             return this;
         }
 
-        private static int getOrCreateComponentId(Class<? extends ECSComponent> component) {
+        static Map<Integer, Class<? extends ECSComponent>> componentClasses() {
+            final Map<Integer, Class<? extends ECSComponent>> cid2class = new HashMap<>();
+            CLASS_2_CID.forEach((component, cid) -> cid2class.put(cid, component));
+            return cid2class;
+        }
+
+        static int getOrCreateComponentId(Class<? extends ECSComponent> component) {
             return CLASS_2_CID.computeIfAbsent(component, e -> CID_SEQ.getAndIncrement());
         }
 
@@ -146,4 +204,9 @@ public final class ECSArchetype {
         return true;
     }
 
+    @Override
+    public String toString() {
+        return "ECSArchetype{" + "all=" + Arrays.toString(all) + ", any=" + Arrays.toString(any) + ", none=" + Arrays.toString(none) + '}';
+    }
+
 }
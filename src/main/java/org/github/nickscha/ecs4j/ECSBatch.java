@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2019 nickscha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.github.nickscha.ecs4j;
+
+import java.util.List;
+
+/**
+ * ECS4J Batch
+ * <p>
+ * A batch of up to {@link #CAPACITY} entities handed to an
+ * {@link ECSBatchSystem}. The batch instance is reused for all batches of a
+ * system during one {@link ECSEntityManager#update()} and must not be kept
+ * after {@link ECSBatchSystem#update(ECSBatch)} returns.
+ * </p>
+ *
+ * @author nickscha
+ * @since 0.0.1
+ */
+public final class ECSBatch {
+
+    public static final int CAPACITY = 256;
+
+    private final int[] entityIds = new int[CAPACITY];
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    private final List<ECSComponent>[] components = new List[CAPACITY];
+    private int size;
+
+    ECSBatch() {
+    }
+
+    /**
+     * @return the number of entities in this batch
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param index the index within this batch, {@code 0 <= index < size()}
+     * @return the entity id
+     */
+    public int entityId(int index) {
+        return entityIds[index];
+    }
+
+    /**
+     * @param index the index within this batch, {@code 0 <= index < size()}
+     * @return the components of the entity
+     */
+    public List<ECSComponent> components(int index) {
+        return components[index];
+    }
+
+    boolean add(int entityId, List<ECSComponent> components) {
+        this.entityIds[size] = entityId;
+        this.components[size] = components;
+        return ++size == CAPACITY;
+    }
+
+    void clear() {
+        for (int i = 0; i < size; i++) {
+            components[i] = null;
+        }
+        size = 0;
+    }
+
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright (C) 2019 nickscha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.github.nickscha.ecs4j;
+
+/**
+ * ECS4J Batch System Specification
+ * <p>
+ * A system which is invoked once per {@link ECSBatch} of entities instead of
+ * once per entity. The loop over the batch lives in the system itself, so it
+ * can call its logic directly instead of going through
+ * {@link ECSSystem#update(java.util.List)} for every entity.
+ * </p>
+ * <b>Example:</b>
+ *
+ * <pre>
+ *     &#64;Override
+ *     public void update(ECSBatch batch) {
+ *         for (int i = 0; i &lt; batch.size(); i++) {
+ *             update(batch.components(i));
+ *         }
+ *     }
+ * </pre>
+ *
+ * @author nickscha
+ * @since 0.0.1
+ */
+public interface ECSBatchSystem extends ECSSystem {
+
+    /**
+     * This method will be invoked from the {@link ECSEntityManager} for each
+     * batch of entities matching the archetype of this system.
+     *
+     * @param batch the batch of entities, only valid during this call
+     */
+    void update(ECSBatch batch);
+
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2019 nickscha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.github.nickscha.ecs4j;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ECS4J Budget
+ * <p>
+ * Per tick limit of a system (see {@link ECSSystem#budget()}). A budgeted
+ * system processes a slice of its entities on each {@link ECSEntityManager#update()}
+ * and resumes where it stopped on the next one, until all entities have been
+ * visited once; then the next pass starts. Entities created during a pass are
+ * visited in the same pass, removed entities are skipped.
+ * </p>
+ * <b>Example (refresh at most 1000 entities or 2ms per tick):</b>
+ *
+ * <pre>
+ *     &#64;Override
+ *     public ECSBudget budget() {
+ *         return ECSBudget.entities(1000).and(ECSBudget.time(2, TimeUnit.MILLISECONDS));
+ *     }
+ * </pre>
+ *
+ * @author nickscha
+ * @since 0.0.1
+ */
+public final class ECSBudget {
+
+    /**
+     * Processes all entities on each tick.
+     */
+    public static final ECSBudget UNLIMITED = new ECSBudget(0, 0);
+
+    private final int entities;
+    private final long nanos;
+
+    private ECSBudget(int entities, long nanos) {
+        this.entities = entities;
+        this.nanos = nanos;
+    }
+
+    /**
+     * @param entities the maximum number of entities per tick
+     * @return the budget
+     */
+    public static ECSBudget entities(int entities) {
+        if (entities < 1) {
+            throw new IllegalArgumentException("entities must be positive");
+        }
+        return new ECSBudget(entities, 0);
+    }
+
+    /**
+     * The time is checked between entities (between batches for
+     * {@link ECSBatchSystem}), so a slice may exceed the limit by the time
+     * needed for one entity or batch.
+     *
+     * @param duration the maximum time per tick
+     * @param unit the unit of the duration
+     * @return the budget
+     */
+    public static ECSBudget time(long duration, TimeUnit unit) {
+        if (duration < 1) {
+            throw new IllegalArgumentException("duration must be positive");
+        }
+        return new ECSBudget(0, unit.toNanos(duration));
+    }
+
+    /**
+     * Combines two budgets, the slice ends as soon as one of the limits is
+     * reached.
+     *
+     * @param other the other budget
+     * @return the combined budget
+     */
+    public ECSBudget and(ECSBudget other) {
+        return new ECSBudget(min(entities, other.entities), min(nanos, other.nanos));
+    }
+
+    private static int min(int a, int b) {
+        return a == 0 ? b : b == 0 ? a : Math.min(a, b);
+    }
+
+    private static long min(long a, long b) {
+        return a == 0 ? b : b == 0 ? a : Math.min(a, b);
+    }
+
+    /**
+     * @return the maximum number of entities per tick, 0 for no limit
+     */
+    public int entities() {
+        return entities;
+    }
+
+    /**
+     * @return the maximum time per tick in nanoseconds, 0 for no limit
+     */
+    public long nanos() {
+        return nanos;
+    }
+
+    /**
+     * @return true if the budget limits the entities or the time per tick
+     */
+    public boolean limited() {
+        return entities > 0 || nanos > 0;
+    }
+
+    @Override
+    public String toString() {
+        return "ECSBudget{" + "entities=" + entities + ", nanos=" + nanos + '}';
+    }
+
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2019 nickscha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.github.nickscha.ecs4j;
+
+/**
+ * ECS Double-Buffered Component
+ * <p>
+ * A double-buffered component holds two copies of its data. During
+ * {@link ECSEntityManager#update()} systems read the state of the previous
+ * tick with {@link #read()} and write the state of the next tick with
+ * {@link #write()}. The buffers are swapped once all systems have finished, so
+ * systems reading neighbour state can run in parallel with the systems writing
+ * it, without locks and independent of thread scheduling.
+ * </p>
+ * <b>Example:</b>
+ *
+ * <pre>
+ * public class Heat extends {@link ECSBufferedComponent}&lt;Heat&gt; {
+ *     public float value;
+ *
+ *     &#64;Override
+ *     protected Heat copy() {
+ *         Heat heat = new Heat();
+ *         heat.value = value;
+ *         return heat;
+ *     }
+ *
+ *     &#64;Override
+ *     protected void copyFrom(Heat other) {
+ *         value = other.value;
+ *     }
+ * }
+ *
+ * // inside a system
+ * Heat heat = (Heat) components.get(0);
+ * heat.write().value = (heat.read().value + neighbour.read().value) / 2;
+ * </pre>
+ *
+ * <p>
+ * After a swap the write buffer starts as a copy of the new read buffer, so
+ * systems only have to write the fields they change. Only components whose
+ * {@link #write()} has been called are swapped; the write buffer is brought up
+ * to date on the first write of the following tick, so unchanged components
+ * cost nothing at the end of a tick. Each buffered component
+ * should be written by a single system per tick. The data must always be
+ * accessed through {@link #read()} and {@link #write()}, never through the
+ * fields of the instance attached to the entity.
+ * </p>
+ *
+ * @param <T> the concrete component type
+ * @author nickscha
+ * @since 0.0.1
+ */
+public abstract class ECSBufferedComponent<T extends ECSBufferedComponent<T>> implements ECSComponent {
+
+    private T front;
+    private T back;
+    private boolean written;
+    private boolean stale;
+
+    @SuppressWarnings("unchecked")
+    protected ECSBufferedComponent() {
+        this.front = (T) this;
+    }
+
+    /**
+     * Creates a new instance holding the same data as this instance. Used once
+     * to create the second buffer when the component is added to an entity.
+     *
+     * @return a copy of this component
+     */
+    protected abstract T copy();
+
+    /**
+     * Overwrites the data of this instance with the data of the other
+     * instance.
+     *
+     * @param other the instance to copy from
+     */
+    protected abstract void copyFrom(T other);
+
+    /**
+     * @return the state of the previous tick
+     */
+    public final T read() {
+        return front;
+    }
+
+    /**
+     * @return the state of the next tick (the read buffer as long as the
+     * component has not been added to an entity)
+     */
+    public final T write() {
+        if (back == null) {
+            return front;
+        }
+        if (!written) {
+            if (stale) {
+                back.copyFrom(front);
+                stale = false;
+            }
+            written = true;
+        }
+        return back;
+    }
+
+    final void buffer() {
+        if (back == null) {
+            back = front.copy();
+        }
+    }
+
+    final void swap() {
+        if (written) {
+            final T tmp = front;
+            front = back;
+            back = tmp;
+            written = false;
+            stale = true;
+        }
+    }
+
+}
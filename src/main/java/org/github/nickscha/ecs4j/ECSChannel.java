@@ -0,0 +1,174 @@
+/*
+ * Copyright (C) 2019 nickscha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.github.nickscha.ecs4j;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * ECS4J Channel
+ * <p>
+ * Typed events passed between the systems of one tick, e.g. collisions or
+ * damage. Producers claim an event with {@link #publish()} and fill it in
+ * place; consumers (see {@link ECSEventSystem}) running in a later
+ * {@link ECSSystem#phase()} see all events of the tick. Every thread
+ * publishes into its own buffer, so publishing takes no lock. The channel is
+ * cleared at the end of each {@link ECSEntityManager#update()} and the event
+ * instances are reused by the next tick, so a steady event rate allocates
+ * nothing. A channel which is no longer needed is closed with
+ * {@link #close()} to release the buffers of all threads.
+ * </p>
+ * <b>Example:</b>
+ *
+ * <pre>
+ * ECSChannel&lt;Damage&gt; damage = em.channel(Damage::new);
+ *
+ * // producer system, phase 0
+ * Damage event = damage.publish();
+ * event.target = targetId;
+ * event.amount = 10;
+ * </pre>
+ *
+ * @param <E> the event type
+ * @author nickscha
+ * @since 0.0.1
+ */
+public final class ECSChannel<E> implements AutoCloseable {
+
+    private final Supplier<E> factory;
+    private final List<Buffer> buffers = new CopyOnWriteArrayList<>();
+    private final ThreadLocal<Buffer> local = ThreadLocal.withInitial(this::register);
+    private volatile boolean closed;
+
+    ECSChannel(Supplier<E> factory) {
+        this.factory = Objects.requireNonNull(factory, "factory");
+    }
+
+    /**
+     * Claims the next event of the calling thread. The returned instance may
+     * hold the data of an event of a previous tick and has to be overwritten
+     * completely.
+     *
+     * @return the event to fill in
+     */
+    @SuppressWarnings("unchecked")
+    public E publish() {
+        if (closed) {
+            throw new IllegalStateException("Channel is closed");
+        }
+        return (E) local.get().claim(factory);
+    }
+
+    /**
+     * Passes every event published in this tick to the action. Must not run
+     * concurrently with producers of this channel.
+     *
+     * @param action the action for each event
+     */
+    @SuppressWarnings("unchecked")
+    public void forEach(Consumer<? super E> action) {
+        for (Buffer buffer : buffers) {
+            final Object[] events = buffer.events;
+            for (int i = 0, n = buffer.size; i < n; i++) {
+                action.accept((E) events[i]);
+            }
+        }
+    }
+
+    /**
+     * @return the number of events published in this tick
+     */
+    public int size() {
+        int size = 0;
+        for (Buffer buffer : buffers) {
+            size += buffer.size;
+        }
+        return size;
+    }
+
+    /**
+     * Resets all buffers for the next tick. Buffers of terminated threads
+     * (e.g. virtual threads) are dropped.
+     */
+    void clear() {
+        for (Buffer buffer : buffers) {
+            buffer.size = 0;
+            if (!buffer.owner.isAlive()) {
+                buffers.remove(buffer);
+            }
+        }
+    }
+
+    /**
+     * Releases the buffers of all threads. The thread local entries of other
+     * threads only hold an empty buffer afterwards, which does not reference
+     * this channel, so they are expunged once the channel is unreachable.
+     * Must not run concurrently with producers of this channel.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        for (Buffer buffer : buffers) {
+            buffer.events = new Object[0];
+            buffer.size = 0;
+        }
+        buffers.clear();
+        local.remove();
+    }
+
+    /**
+     * @return true if the channel has been closed
+     */
+    public boolean closed() {
+        return closed;
+    }
+
+    private Buffer register() {
+        final Buffer buffer = new Buffer(Thread.currentThread());
+        buffers.add(buffer);
+        return buffer;
+    }
+
+    // static, so a thread local entry does not keep the channel reachable
+    private static final class Buffer {
+
+        private final Thread owner;
+        private Object[] events = new Object[64];
+        private int size;
+
+        private Buffer(Thread owner) {
+            this.owner = owner;
+        }
+
+        Object claim(Supplier<?> factory) {
+            if (size == events.length) {
+                events = Arrays.copyOf(events, Math.max(64, size * 2));
+            }
+            Object event = events[size];
+            if (event == null) {
+                event = factory.get();
+                events[size] = event;
+            }
+            size++;
+            return event;
+        }
+    }
+
+}
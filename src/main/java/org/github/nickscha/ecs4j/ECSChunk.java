@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2019 nickscha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.github.nickscha.ecs4j;
+
+/**
+ * ECS4J Chunk
+ * <p>
+ * A range of rows of one composition handed to an {@link ECSChunkSystem}. The
+ * fields of the {@link ECSColumnComponent}s are exposed as raw arrays, the
+ * rows {@code offset() <= row < offset() + length()} belong to this chunk.
+ * Rows of removed entities may be part of the range (see
+ * {@link #entityId(int)}); their values are unused, so a loop can process them
+ * instead of branching. The chunk instance is reused and must not be kept
+ * after {@link ECSChunkSystem#update(ECSChunk)} returns.
+ * </p>
+ * <b>Example:</b>
+ *
+ * <pre>
+ * float[] x = chunk.floats(Position.class, Position.X);
+ * float[] velX = chunk.floats(Velocity.class, Velocity.X);
+ * for (int i = chunk.offset(), end = i + chunk.length(); i &lt; end; i++) {
+ *     x[i] += velX[i] * dt;
+ * }
+ * </pre>
+ *
+ * @author nickscha
+ * @since 0.0.1
+ */
+public final class ECSChunk {
+
+    /**
+     * The maximum number of rows of a chunk.
+     */
+    public static final int CAPACITY = 4096;
+
+    private ECSComposition composition;
+    private int offset;
+    private int length;
+
+    ECSChunk() {
+    }
+
+    void set(ECSComposition composition, int offset, int length) {
+        this.composition = composition;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    /**
+     * @return the first row of this chunk
+     */
+    public int offset() {
+        return offset;
+    }
+
+    /**
+     * @return the number of rows of this chunk
+     */
+    public int length() {
+        return length;
+    }
+
+    /**
+     * @param row the row, {@code offset() <= row < offset() + length()}
+     * @return the entity id or -1 if the entity of the row has been removed
+     */
+    public int entityId(int row) {
+        return composition.entities().get(row);
+    }
+
+    /**
+     * @param type the columnar component type
+     * @param field the index of the float field
+     * @return the values of the field, indexed by row
+     * @throws IllegalArgumentException if the composition has no such type
+     */
+    public float[] floats(Class<? extends ECSColumnComponent> type, int field) {
+        return columns(type).floats[field];
+    }
+
+    /**
+     * @param type the columnar component type
+     * @param field the index of the int field
+     * @return the values of the field, indexed by row
+     * @throws IllegalArgumentException if the composition has no such type
+     */
+    public int[] ints(Class<? extends ECSColumnComponent> type, int field) {
+        return columns(type).ints[field];
+    }
+
+    /**
+     * @param type the columnar component type
+     * @param field the index of the long field
+     * @return the values of the field, indexed by row
+     * @throws IllegalArgumentException if the composition has no such type
+     */
+    public long[] longs(Class<? extends ECSColumnComponent> type, int field) {
+        return columns(type).longs[field];
+    }
+
+    private ECSColumns columns(Class<? extends ECSColumnComponent> type) {
+        final ECSColumns columns = composition.columns(type);
+        if (columns == null) {
+            throw new IllegalArgumentException("No columns of " + type.getName() + " in this chunk");
+        }
+        return columns;
+    }
+
+}
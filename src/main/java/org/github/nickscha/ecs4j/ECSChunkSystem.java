@@ -0,0 +1,63 @@
+/*
+ * Copyright (C) 2019 nickscha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.github.nickscha.ecs4j;
+
+import java.util.List;
+
+/**
+ * ECS4J Chunk System Specification
+ * <p>
+ * A system which is invoked once per {@link ECSChunk} of the compositions
+ * matching its archetype instead of once per entity, with the fields of the
+ * {@link ECSColumnComponent}s as primitive arrays. The archetype must not
+ * reference sparse components and the budget of a chunk system is ignored.
+ * </p>
+ * <b>Example:</b>
+ *
+ * <pre>
+ *     &#64;Override
+ *     public void update(ECSChunk chunk) {
+ *         float[] x = chunk.floats(Position.class, Position.X);
+ *         float[] velX = chunk.floats(Velocity.class, Velocity.X);
+ *         for (int i = chunk.offset(), end = i + chunk.length(); i &lt; end; i++) {
+ *             x[i] += velX[i];
+ *         }
+ *     }
+ * </pre>
+ *
+ * @author nickscha
+ * @since 0.0.1
+ */
+public interface ECSChunkSystem extends ECSSystem {
+
+    /**
+     * This method will be invoked from the {@link ECSEntityManager} for each
+     * chunk of the compositions matching the archetype of this system.
+     *
+     * @param chunk the chunk, only valid during this call
+     */
+    void update(ECSChunk chunk);
+
+    /**
+     * Not invoked for chunk systems.
+     *
+     * @param components unused
+     */
+    @Override
+    default void update(List<ECSComponent> components) {
+    }
+
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2019 nickscha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.github.nickscha.ecs4j;
+
+import java.nio.Buffer;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/**
+ * ECS4J Codecs
+ * <p>
+ * The codecs of the replicated component types of a world. The wire type of a
+ * component is the registration order of its codec, so the sending and the
+ * receiving world have to register the same codecs in the same order. Each
+ * encoded component is written as its type (short), its length (int) and the
+ * bytes of its encoder.
+ * </p>
+ *
+ * @author nickscha
+ * @since 0.0.1
+ */
+final class ECSCodecs {
+
+    static final int MAX_TYPES = 1 << 16;
+
+    private final Map<Class<? extends ECSComponent>, Integer> class2type = new HashMap<>();
+    private final List<Class<? extends ECSComponent>> classes = new ArrayList<>();
+    private final List<ECSComponentCodec<?>> codecs = new ArrayList<>();
+    private final List<BiConsumer<?, ByteBuffer>> encoders = new ArrayList<>();
+
+    <T extends ECSComponent> void register(Class<T> type, ECSComponentCodec<T> codec, BiConsumer<T, ByteBuffer> encoder) {
+        if (class2type.containsKey(type)) {
+            throw new IllegalArgumentException("Codec already registered for " + type.getName());
+        }
+        if (codecs.size() == MAX_TYPES) {
+            throw new IllegalStateException("Too many codecs");
+        }
+        class2type.put(type, codecs.size());
+        classes.add(type);
+        codecs.add(codec);
+        encoders.add(encoder);
+    }
+
+    boolean isEmpty() {
+        return codecs.isEmpty();
+    }
+
+    /**
+     * @return the wire type of the component class or -1 if it is not
+     * replicated
+     */
+    int type(Class<?> component) {
+        final Integer type = class2type.get(component);
+        return type == null ? -1 : type;
+    }
+
+    /**
+     * @return the component class of the wire type
+     */
+    Class<? extends ECSComponent> component(int type) {
+        if (type >= classes.size()) {
+            throw new IllegalArgumentException("No codec registered for type " + type);
+        }
+        return classes.get(type);
+    }
+
+    /**
+     * Encodes the component, growing the buffer if necessary.
+     *
+     * @return the buffer holding the encoded component
+     */
+    @SuppressWarnings("unchecked")
+    ByteBuffer encode(ByteBuffer buffer, int type, ECSComponent component) {
+        final BiConsumer<ECSComponent, ByteBuffer> encoder = (BiConsumer<ECSComponent, ByteBuffer>) encoders.get(type);
+        while (true) {
+            final int start = buffer.position();
+            try {
+                buffer.putShort((short) type);
+                buffer.putInt(0);
+                encoder.accept(component, buffer);
+                buffer.putInt(start + 2, buffer.position() - start - 6);
+                return buffer;
+            } catch (BufferOverflowException ex) {
+                ((Buffer) buffer).position(start);
+                buffer = grow(buffer, buffer.remaining() + 1);
+            }
+        }
+    }
+
+    /**
+     * Decodes the next component of the buffer.
+     */
+    ECSComponent decode(ByteBuffer buffer) {
+        final int type = buffer.getShort() & 0xFFFF;
+        final int length = buffer.getInt();
+        if (type >= codecs.size()) {
+            throw new IllegalArgumentException("No codec registered for type " + type);
+        }
+        final int end = buffer.position() + length;
+        final ByteBuffer view = buffer.duplicate();
+        ((Buffer) view).limit(end);
+        final ECSComponent component = codecs.get(type).decode(view);
+        ((Buffer) buffer).position(end);
+        return component;
+    }
+
+    /**
+     * @return the buffer or a copy with at least the additional capacity
+     */
+    static ByteBuffer grow(ByteBuffer buffer, int additional) {
+        if (buffer.remaining() >= additional) {
+            return buffer;
+        }
+        final ByteBuffer grown = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + additional));
+        ((Buffer) buffer).flip();
+        grown.put(buffer);
+        return grown;
+    }
+
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2019 nickscha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.github.nickscha.ecs4j;
+
+/**
+ * ECS4J Column Component
+ * <p>
+ * A component declared as a bundle of primitive fields. The fields of all
+ * entities of a composition are stored as one {@code float[]}, {@code int[]}
+ * or {@code long[]} per field (struct of arrays), so an
+ * {@link ECSChunkSystem} can process them in plain counted loops which the JIT
+ * can vectorize. The component instance is a view of its row and stays valid
+ * while the entity changes composition; once removed from the entity it keeps
+ * the last values.
+ * </p>
+ * <b>Example:</b>
+ *
+ * <pre>
+ * public class Position extends ECSColumnComponent {
+ *
+ *     public static final int X = 0, Y = 1;
+ *
+ *     public Position(float x, float y) {
+ *         super(2, 0, 0);
+ *         setFloat(X, x);
+ *         setFloat(Y, y);
+ *     }
+ *
+ *     public float x() {
+ *         return getFloat(X);
+ *     }
+ * }
+ * </pre>
+ *
+ * @author nickscha
+ * @since 0.0.1
+ */
+public abstract class ECSColumnComponent implements ECSComponent {
+
+    private ECSColumns columns;
+    private int row;
+    private boolean bound;
+
+    /**
+     * All instances of one type have to declare the same fields.
+     *
+     * @param floats the number of float fields
+     * @param ints the number of int fields
+     * @param longs the number of long fields
+     */
+    protected ECSColumnComponent(int floats, int ints, int longs) {
+        this.columns = new ECSColumns(floats, ints, longs, 1);
+    }
+
+    protected final float getFloat(int field) {
+        return columns.floats[field][row];
+    }
+
+    protected final void setFloat(int field, float value) {
+        columns.floats[field][row] = value;
+    }
+
+    protected final int getInt(int field) {
+        return columns.ints[field][row];
+    }
+
+    protected final void setInt(int field, int value) {
+        columns.ints[field][row] = value;
+    }
+
+    protected final long getLong(int field) {
+        return columns.longs[field][row];
+    }
+
+    protected final void setLong(int field, long value) {
+        columns.longs[field][row] = value;
+    }
+
+    final ECSColumns columns() {
+        return columns;
+    }
+
+    final int row() {
+        return row;
+    }
+
+    final boolean bound() {
+        return bound;
+    }
+
+    /**
+     * Moves the values into the row of the columns and makes this instance a
+     * view of that row.
+     */
+    final void bind(ECSColumns target, int targetRow) {
+        target.ensure(targetRow + 1);
+        target.copy(columns, row, targetRow);
+        columns = target;
+        row = targetRow;
+        bound = true;
+    }
+
+    /**
+     * Copies the values out of the shared columns, e.g. when the component is
+     * removed from its entity.
+     */
+    final void unbind() {
+        if (bound) {
+            final ECSColumns local = columns.like(1);
+            local.copy(columns, row, 0);
+            columns = local;
+            row = 0;
+            bound = false;
+        }
+    }
+
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2019 nickscha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.github.nickscha.ecs4j;
+
+import java.util.Arrays;
+
+/**
+ * ECS4J Columns
+ * <p>
+ * Struct of arrays storage of one {@link ECSColumnComponent} type: one
+ * primitive array per field, indexed by row. Each composition holds one
+ * instance per columnar type, the row of an entity is its slot in the entity
+ * list of the composition. A component which is not part of an entity uses an
+ * instance with a single row.
+ * </p>
+ *
+ * @author nickscha
+ * @since 0.0.1
+ */
+final class ECSColumns {
+
+    float[][] floats;
+    int[][] ints;
+    long[][] longs;
+    private int capacity;
+
+    ECSColumns(int floats, int ints, int longs, int capacity) {
+        this.floats = new float[floats][capacity];
+        this.ints = new int[ints][capacity];
+        this.longs = new long[longs][capacity];
+        this.capacity = capacity;
+    }
+
+    /**
+     * @param capacity the number of rows
+     * @return new columns with the same fields as this instance
+     */
+    ECSColumns like(int capacity) {
+        return new ECSColumns(floats.length, ints.length, longs.length, capacity);
+    }
+
+    void ensure(int rows) {
+        if (rows <= capacity) {
+            return;
+        }
+        capacity = Math.max(rows, capacity + (capacity >> 1) + 1);
+        for (int i = 0; i < floats.length; i++) {
+            floats[i] = Arrays.copyOf(floats[i], capacity);
+        }
+        for (int i = 0; i < ints.length; i++) {
+            ints[i] = Arrays.copyOf(ints[i], capacity);
+        }
+        for (int i = 0; i < longs.length; i++) {
+            longs[i] = Arrays.copyOf(longs[i], capacity);
+        }
+    }
+
+    /**
+     * Shrinks the columns to the number of rows.
+     */
+    void trim(int rows) {
+        if (rows >= capacity) {
+            return;
+        }
+        capacity = Math.max(1, rows);
+        for (int i = 0; i < floats.length; i++) {
+            floats[i] = Arrays.copyOf(floats[i], capacity);
+        }
+        for (int i = 0; i < ints.length; i++) {
+            ints[i] = Arrays.copyOf(ints[i], capacity);
+        }
+        for (int i = 0; i < longs.length; i++) {
+            longs[i] = Arrays.copyOf(longs[i], capacity);
+        }
+    }
+
+    /**
+     * Moves the values of the component into the row and makes the component
+     * a view of that row.
+     */
+    void bind(ECSColumnComponent component, int row) {
+        component.bind(this, row);
+    }
+
+    void copy(ECSColumns from, int fromRow, int toRow) {
+        if (from.floats.length != floats.length || from.ints.length != ints.length || from.longs.length != longs.length) {
+            throw new IllegalStateException("Columnar components of one type must declare the same fields");
+        }
+        for (int i = 0; i < floats.length; i++) {
+            floats[i][toRow] = from.floats[i][fromRow];
+        }
+        for (int i = 0; i < ints.length; i++) {
+            ints[i][toRow] = from.ints[i][fromRow];
+        }
+        for (int i = 0; i < longs.length; i++) {
+            longs[i][toRow] = from.longs[i][fromRow];
+        }
+    }
+
+    long bytes() {
+        return ECSMemory.array(floats.length, 4) + ECSMemory.array(ints.length, 4) + ECSMemory.array(longs.length, 4)
+                + floats.length * ECSMemory.array(capacity, 4)
+                + ints.length * ECSMemory.array(capacity, 4)
+                + longs.length * ECSMemory.array(capacity, 8);
+    }
+
+}
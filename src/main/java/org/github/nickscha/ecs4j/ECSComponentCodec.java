@@ -0,0 +1,61 @@
+/*
+ * Copyright (C) 2019 nickscha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.github.nickscha.ecs4j;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * ECS4J Component Codec
+ * <p>
+ * Decodes one {@link ECSComponent} from its binary or text representation.
+ * </p>
+ * <b>Example (binary record with two floats):</b>
+ *
+ * <pre>
+ * ECSComponentCodec&lt;Position&gt; codec = buffer -&gt; new Position(buffer.getFloat(), buffer.getFloat());
+ * </pre>
+ *
+ * @param <T> the component type
+ * @author nickscha
+ * @since 0.0.1
+ */
+@FunctionalInterface
+public interface ECSComponentCodec<T extends ECSComponent> {
+
+    /**
+     * Decodes a component. For binary records the buffer is positioned at the
+     * bytes of this component and the codec has to consume them; for CSV
+     * records the buffer holds exactly the bytes of the field of this
+     * component. The buffer must not be kept after this call.
+     *
+     * @param buffer the buffer to decode from
+     * @return the component
+     */
+    T decode(ByteBuffer buffer);
+
+    /**
+     * Decodes the remaining bytes of the buffer as UTF-8 text, intended for
+     * CSV fields.
+     *
+     * @param buffer the buffer
+     * @return the text
+     */
+    static String text(ByteBuffer buffer) {
+        return StandardCharsets.UTF_8.decode(buffer).toString().trim();
+    }
+
+}
@@ -0,0 +1,201 @@
+/*
+ * Copyright (C) 2019 nickscha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.github.nickscha.ecs4j;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * ECS4J Composition
+ * <p>
+ * Table of all entities sharing the same set of component types. The
+ * archetypes matching a composition are resolved once when the composition is
+ * created (or when a new archetype is registered), so adding and removing
+ * entities of a known composition needs no archetype matching. The fields of
+ * {@link ECSColumnComponent}s are stored in {@link ECSColumns}, the row of an
+ * entity is its slot in the entity list.
+ * </p>
+ *
+ * @author nickscha
+ * @since 0.0.1
+ */
+final class ECSComposition {
+
+    private static final int[] NO_CURSORS = new int[0];
+
+    private final BitSet cids;
+    private final ECSEntityList entities = new ECSEntityList();
+    private final List<ECSEntityList> archetypes = new ArrayList<>(4);
+    private Map<Class<?>, ECSColumns> columns;
+
+    ECSComposition(BitSet cids) {
+        this.cids = cids;
+    }
+
+    /**
+     * @return the component ids of this composition, must not be modified
+     */
+    BitSet cids() {
+        return cids;
+    }
+
+    /**
+     * @return the entities of this composition
+     */
+    ECSEntityList entities() {
+        return entities;
+    }
+
+    /**
+     * @return the membership lists of all archetypes matching this
+     * composition
+     */
+    List<ECSEntityList> archetypes() {
+        return archetypes;
+    }
+
+    /**
+     * @param type the columnar component type
+     * @return the columns of the type or null if the composition has none
+     */
+    ECSColumns columns(Class<?> type) {
+        return columns == null ? null : columns.get(type);
+    }
+
+    /**
+     * Moves the fields of the columnar components of an entity into its row.
+     *
+     * @param components the components of the entity
+     * @param row the slot of the entity
+     */
+    void bind(List<ECSComponent> components, int row) {
+        for (int i = 0, n = components.size(); i < n; i++) {
+            final ECSComponent component = components.get(i);
+            if (component instanceof ECSColumnComponent
+                    && cids.get(ECSArchetype.Builder.getOrCreateComponentId(component.getClass()))) {
+                final ECSColumnComponent columnar = (ECSColumnComponent) component;
+                if (columns == null) {
+                    columns = new HashMap<>(4);
+                }
+                columns.computeIfAbsent(component.getClass(), type -> columnar.columns().like(entities.capacity()))
+                        .bind(columnar, row);
+            }
+        }
+    }
+
+    /**
+     * Compacts the entity list and moves the rows of the columns along.
+     *
+     * @param eId2data the components per entity
+     */
+    void compact(Map<Integer, List<ECSComponent>> eId2data) {
+        entities.compact(null);
+        if (columns == null) {
+            return;
+        }
+        final Map<Class<?>, ECSColumns> previous = columns;
+        columns = new HashMap<>(previous.size() * 2);
+        for (Map.Entry<Class<?>, ECSColumns> entry : previous.entrySet()) {
+            columns.put(entry.getKey(), entry.getValue().like(Math.max(1, entities.slots())));
+        }
+        for (int row = 0, slots = entities.slots(); row < slots; row++) {
+            final List<ECSComponent> components = eId2data.get(entities.get(row));
+            for (int i = 0, n = components.size(); i < n; i++) {
+                final ECSComponent component = components.get(i);
+                if (component instanceof ECSColumnComponent
+                        && ((ECSColumnComponent) component).columns() == previous.get(component.getClass())) {
+                    columns.get(component.getClass()).bind((ECSColumnComponent) component, row);
+                }
+            }
+        }
+    }
+
+    /**
+     * Compacts the entity list incrementally (see
+     * {@link ECSEntityList#compact(int, int[], ECSEntityList.Mover)}) and
+     * moves the row of each moved entity along.
+     *
+     * @param eId2data the components per entity
+     * @param step the maximum number of rows to visit
+     * @return true once the composition is compact
+     */
+    boolean compact(Map<Integer, List<ECSComponent>> eId2data, int step) {
+        if (columns == null) {
+            return entities.compact(step, NO_CURSORS, null);
+        }
+        final boolean done = entities.compact(step, NO_CURSORS, (entityId, row) -> move(eId2data.get(entityId), row));
+        if (done) {
+            for (ECSColumns values : columns.values()) {
+                values.trim(entities.capacity());
+            }
+        }
+        return done;
+    }
+
+    private void move(List<ECSComponent> components, int row) {
+        for (int i = 0, n = components.size(); i < n; i++) {
+            final ECSComponent component = components.get(i);
+            if (component instanceof ECSColumnComponent) {
+                final ECSColumns values = columns.get(component.getClass());
+                if (values != null && ((ECSColumnComponent) component).columns() == values) {
+                    values.bind((ECSColumnComponent) component, row);
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes the membership list of an archetype which is no longer used.
+     *
+     * @param entityIds the membership list
+     */
+    void removeArchetype(ECSEntityList entityIds) {
+        for (int i = 0, n = archetypes.size(); i < n; i++) {
+            if (archetypes.get(i) == entityIds) {
+                archetypes.remove(i);
+                return;
+            }
+        }
+    }
+
+    void add(int entityId) {
+        entities.add(entityId);
+        for (int i = 0, n = archetypes.size(); i < n; i++) {
+            archetypes.get(i).add(entityId);
+        }
+    }
+
+    void remove(int entityId) {
+        entities.remove(entityId);
+        for (int i = 0, n = archetypes.size(); i < n; i++) {
+            archetypes.get(i).remove(entityId);
+        }
+    }
+
+    /**
+     * @param entityIds the entity ids to remove, sorted ascending
+     */
+    void removeAll(int[] entityIds) {
+        entities.removeAll(entityIds);
+        for (int i = 0, n = archetypes.size(); i < n; i++) {
+            archetypes.get(i).removeAll(entityIds);
+        }
+    }
+
+}
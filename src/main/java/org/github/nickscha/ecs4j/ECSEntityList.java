@@ -0,0 +1,323 @@
+/*
+ * Copyright (C) 2019 nickscha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.github.nickscha.ecs4j;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.function.IntConsumer;
+
+/**
+ * ECS4J Entity List
+ * <p>
+ * Primitive list of entity ids used for archetype membership. Removed entities
+ * leave a hole ({@link #HOLE}) so slot indices stay stable until the list is
+ * compacted; appending an id which breaks the current order marks the list as
+ * disordered.
+ * </p>
+ *
+ * @author nickscha
+ * @since 0.0.1
+ */
+final class ECSEntityList {
+
+    static final int HOLE = -1;
+
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private int[] ids;
+    private int slots;
+    private int holes;
+    private int disorder;
+    private boolean byId = true;
+    // incremental compaction: [0, fill) is compact, [fill, scan) are holes
+    private int fill = -1;
+    private int scan;
+
+    ECSEntityList() {
+        this.ids = new int[DEFAULT_CAPACITY];
+    }
+
+    void add(int entityId) {
+        if (slots == ids.length) {
+            ids = Arrays.copyOf(ids, slots + (slots >> 1) + 1);
+        }
+        if (!byId || (slots > 0 && ids[slots - 1] > entityId)) {
+            disorder++;
+        }
+        ids[slots++] = entityId;
+    }
+
+    boolean remove(int entityId) {
+        final int slot = indexOf(entityId);
+        if (slot < 0) {
+            return false;
+        }
+        ids[slot] = HOLE;
+        holes++;
+        return true;
+    }
+
+    /**
+     * Removes a batch of entities with a single pass over the slots, also if
+     * the list is not ordered by id.
+     *
+     * @param entityIds the entity ids to remove, sorted ascending
+     * @return the number of removed entities
+     */
+    int removeAll(int[] entityIds) {
+        int removed = 0;
+        for (int i = 0; i < slots; i++) {
+            if (ids[i] != HOLE && Arrays.binarySearch(entityIds, ids[i]) >= 0) {
+                ids[i] = HOLE;
+                removed++;
+            }
+        }
+        holes += removed;
+        return removed;
+    }
+
+    boolean contains(int entityId) {
+        return indexOf(entityId) >= 0;
+    }
+
+    private int indexOf(int entityId) {
+        if (byId && holes == 0 && disorder == 0) {
+            final int slot = Arrays.binarySearch(ids, 0, slots, entityId);
+            return slot >= 0 ? slot : -1;
+        }
+        for (int i = 0; i < slots; i++) {
+            if (ids[i] == entityId) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param slot the slot index, {@code 0 <= slot < slots()}
+     * @return the entity id or {@link #HOLE}
+     */
+    int get(int slot) {
+        return ids[slot];
+    }
+
+    void forEach(IntConsumer action) {
+        for (int i = 0; i < slots; i++) {
+            final int entityId = ids[i];
+            if (entityId != HOLE) {
+                action.accept(entityId);
+            }
+        }
+    }
+
+    /**
+     * @return the number of entities
+     */
+    int size() {
+        return slots - holes;
+    }
+
+    /**
+     * @return the number of holes
+     */
+    int holes() {
+        return holes;
+    }
+
+    /**
+     * @return the number of used slots including holes
+     */
+    int slots() {
+        return slots;
+    }
+
+    /**
+     * @return the length of the backing array
+     */
+    int capacity() {
+        return ids.length;
+    }
+
+    /**
+     * The share of slots which are holes or out of order, between 0 (as
+     * compact as a freshly filled list) and 1.
+     *
+     * @return the fragmentation of this list
+     */
+    double fragmentation() {
+        return slots == 0 ? 0 : Math.min(1.0, (double) (holes + disorder) / slots);
+    }
+
+    boolean oversized() {
+        return ids.length > DEFAULT_CAPACITY && ids.length > 2 * size();
+    }
+
+    /**
+     * Removes all holes, restores the order and shrinks the backing array to
+     * the number of entities.
+     *
+     * @param order the order of the entity ids or null to order by id
+     */
+    void compact(Comparator<Integer> order) {
+        compact(order, new int[0]);
+    }
+
+    /**
+     * Compacts the list like {@link #compact(Comparator)}, but the entities
+     * before each cursor stay before it, so a pass in progress (see
+     * {@link ECSBudget}) neither skips nor revisits entities. Each cursor is
+     * updated to its slot in the compacted list.
+     *
+     * @param order the order of the entity ids or null to order by id
+     * @param cursors the slots of the passes in progress
+     */
+    void compact(Comparator<Integer> order, int[] cursors) {
+        final int size = size();
+        final int[] tmp = new int[Math.max(DEFAULT_CAPACITY, size)];
+        final int[] bounds = new int[cursors.length];
+        for (int c = 0; c < cursors.length; c++) {
+            bounds[c] = Math.min(cursors[c], slots);
+        }
+        Arrays.sort(bounds);
+        final int[] newBounds = new int[bounds.length];
+        int index = 0;
+        int start = 0;
+        int b = 0;
+        for (int i = 0; i <= slots; i++) {
+            if (b < bounds.length && bounds[b] == i) {
+                sort(tmp, start, index, order);
+                start = index;
+                while (b < bounds.length && bounds[b] == i) {
+                    newBounds[b++] = index;
+                }
+            }
+            if (i < slots && ids[i] != HOLE) {
+                tmp[index++] = ids[i];
+            }
+        }
+        sort(tmp, start, size, order);
+        for (int c = 0; c < cursors.length; c++) {
+            cursors[c] = newBounds[Arrays.binarySearch(bounds, Math.min(cursors[c], slots))];
+        }
+        ids = tmp;
+        slots = size;
+        holes = 0;
+        disorder = 0;
+        byId = order == null;
+        fill = -1;
+        scan = 0;
+        if (byId && bounds.length > 0) {
+            // the segments are ordered individually
+            for (int i = 1; i < size; i++) {
+                if (ids[i - 1] > ids[i]) {
+                    disorder++;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return true if an incremental compaction (see
+     * {@link #compact(int, int[], Mover)}) is in progress
+     */
+    boolean compacting() {
+        return fill >= 0;
+    }
+
+    /**
+     * Removes the holes incrementally, visiting at most {@code step} slots per
+     * call. The order of the entities is kept, so the list can be used and
+     * modified between the calls and cursors stay valid: the entities before
+     * each cursor stay before it. Restoring the order needs
+     * {@link #compact(Comparator, int[])}.
+     *
+     * @param step the maximum number of slots to visit
+     * @param cursors the slots of the passes in progress
+     * @param mover notified for each entity moved to another slot or null
+     * @return true once the list is compact
+     */
+    boolean compact(int step, int[] cursors, Mover mover) {
+        if (fill < 0) {
+            fill = 0;
+            scan = 0;
+        }
+        for (int c = 0; c < cursors.length; c++) {
+            if (cursors[c] > fill && cursors[c] <= scan) {
+                cursors[c] = fill;
+            }
+        }
+        final int end = (int) Math.min(slots, (long) scan + step);
+        for (; scan < end; scan++) {
+            for (int c = 0; c < cursors.length; c++) {
+                if (cursors[c] == scan) {
+                    cursors[c] = fill;
+                }
+            }
+            final int entityId = ids[scan];
+            if (entityId == HOLE) {
+                continue;
+            }
+            if (fill != scan) {
+                ids[fill] = entityId;
+                ids[scan] = HOLE;
+                if (mover != null) {
+                    mover.move(entityId, fill);
+                }
+            }
+            fill++;
+        }
+        if (scan < slots) {
+            return false;
+        }
+        for (int c = 0; c < cursors.length; c++) {
+            if (cursors[c] > fill) {
+                cursors[c] = fill;
+            }
+        }
+        holes -= slots - fill;
+        slots = fill;
+        fill = -1;
+        scan = 0;
+        if (oversized()) {
+            ids = Arrays.copyOf(ids, Math.max(DEFAULT_CAPACITY, slots));
+        }
+        return true;
+    }
+
+    /**
+     * Receives the entities moved by an incremental compaction.
+     */
+    interface Mover {
+
+        void move(int entityId, int slot);
+    }
+
+    private static void sort(int[] ids, int from, int to, Comparator<Integer> order) {
+        if (order == null) {
+            Arrays.sort(ids, from, to);
+            return;
+        }
+        final Integer[] boxed = new Integer[to - from];
+        for (int i = 0; i < boxed.length; i++) {
+            boxed[i] = ids[from + i];
+        }
+        Arrays.sort(boxed, order);
+        for (int i = 0; i < boxed.length; i++) {
+            ids[from + i] = boxed[i];
+        }
+    }
+
+}
@@ -15,18 +15,34 @@
  */
 package org.github.nickscha.ecs4j;
 
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.IntConsumer;
+import java.util.function.ObjIntConsumer;
+import java.util.function.Supplier;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 /**
  * ECS4J EntityManager
@@ -40,17 +56,59 @@ public final class ECSEntityManager {
     private static final ECSEntityManager INSTANCE = new ECSEntityManager();
 
     // Entity Store
-    private final Map<Integer, List<ECSComponent>> eId2data = new HashMap<>();
-    private final AtomicInteger eIdSeq = new AtomicInteger(0);
+    private final ECSEntityMap<List<ECSComponent>> eId2data = new ECSEntityMap<>();
+    private int eIdPeak;
+    private AtomicInteger eIdSeq = new AtomicInteger(0);
+    private final ECSStaging staging = new ECSStaging();
+    private final Map<Integer, List<ECSBufferedComponent<?>>> eId2buffers = new HashMap<>();
+
+    // Composition Store
+    private final Map<BitSet, ECSComposition> compositions = new HashMap<>();
+    private final Map<Integer, List<ECSComposition>> cid2compositions = new HashMap<>();
+    private final ECSEntityMap<ECSComposition> eId2composition = new ECSEntityMap<>();
+
+    // Sparse Store
+    private final BitSet sparse = new BitSet();
+    private final Map<Integer, ECSSparseSet> cid2sparse = new HashMap<>();
+    private final Map<ECSArchetype, ECSJoin> archetype2join = new HashMap<>();
 
     // System Store
     private final Map<Integer, ECSSystem> sId2data = new HashMap<>();
     private final Map<Integer, ECSArchetype> sId2archetype = new HashMap<>();
     private final AtomicInteger sIdSeq = new AtomicInteger(0);
     private final Map<Class<? extends ECSSystem>, Integer> sClass2sId = new HashMap<>();
+    private final Map<Integer, ECSBudget> sId2budget = new HashMap<>();
+    // next slot in the membership list per budgeted system
+    private final Map<Integer, int[]> sId2cursor = new HashMap<>();
+    private final Map<Integer, Integer> sId2phase = new HashMap<>();
+    private final TreeMap<Integer, List<Integer>> phase2sIds = new TreeMap<>();
+    private final Set<Integer> disabled = new HashSet<>();
+
+    // Event Store
+    private final List<ECSChannel<?>> channels = new ArrayList<>();
 
     // Archetype Store
-    private final Map<ECSArchetype, List<Integer>> archetype2eids = new HashMap<>();
+    private final Map<ECSArchetype, ECSEntityList> archetype2eids = new HashMap<>();
+    private final Map<ECSArchetype, Comparator<List<ECSComponent>>> archetype2order = new HashMap<>();
+    private final Map<Integer, List<ECSArchetype>> cid2archetypes = new HashMap<>();
+    private final List<ECSArchetype> unconstrained = new ArrayList<>();
+
+    // Compaction
+    private static final int EID_PEAK_MIN = 1024;
+    // slots or entity ids visited between two checks of the time budget
+    private static final int COMPACTION_STEP = 4096;
+    private long compactionBudget = 1_000_000L;
+    private double compactionThreshold = 0.25;
+
+    // Execution
+    private volatile Executor executor = ECSExecutors.commonPool();
+
+    // Replication
+    private final ECSCodecs codecs = new ECSCodecs();
+    private final ECSJournal journal = new ECSJournal();
+    private long tick;
+    private long journalStart;
+    private int deltaRetention = 32;
 
     private ECSEntityManager() {
     }
@@ -59,40 +117,322 @@ public final class ECSEntityManager {
         return INSTANCE;
     }
 
+    /**
+     * Creates a new, independent world which does not share entities, systems
+     * or the execution backend with {@link #getOrCreate()}.
+     *
+     * @return a new entity manager
+     */
+    public static ECSEntityManager create() {
+        return new ECSEntityManager();
+    }
+
+    /**
+     * Sets the backend used to run the systems of this world on
+     * {@link #update()}. See {@link ECSExecutors} for the available backends.
+     *
+     * @param executor the execution backend
+     * @return this entity manager
+     */
+    public ECSEntityManager executor(Executor executor) {
+        this.executor = Objects.requireNonNull(executor, "executor");
+        return this;
+    }
+
     public int createEntity(ECSComponent... components) {
         return createEntity(Arrays.asList(components));
     }
 
     public int createEntity(List<ECSComponent> components) {
         final int entityId = createEntityId();
+        insertEntity(entityId, components);
+        return entityId;
+    }
+
+    /**
+     * Creates entities in bulk, e.g. from an {@link ECSImport}. The entity ids
+     * are consecutive, starting at the returned id.
+     *
+     * @param entities the components of each entity
+     * @return the id of the first entity
+     */
+    public int createEntities(List<List<ECSComponent>> entities) {
+        final int entityId = eIdSeq.getAndAdd(entities.size());
+        for (int i = 0, n = entities.size(); i < n; i++) {
+            insertEntity(entityId + i, entities.get(i));
+        }
+        return entityId;
+    }
+
+    /**
+     * Stages a new entity. Unlike {@link #createEntity(List)} this method can
+     * be called from any thread, also while {@link #update()} is running. The
+     * entity is merged into the world at the start of the next
+     * {@link #update()}; until then {@link #hasEntity(int)} returns false.
+     *
+     * @param components the components of the entity
+     * @return the id of the entity
+     */
+    public int stageEntity(ECSComponent... components) {
+        return stageEntity(Arrays.asList(components));
+    }
+
+    /**
+     * @see #stageEntity(ECSComponent...)
+     * @param components the components of the entity
+     * @return the id of the entity
+     */
+    public int stageEntity(List<ECSComponent> components) {
+        final int entityId = createEntityId();
+        staging.stage(entityId, components);
+        return entityId;
+    }
+
+    private void mergeStaged() {
+        if (staging.isEmpty()) {
+            return;
+        }
+        staging.drain((components, entityId) -> insertEntity(entityId, components));
+    }
+
+    private void insertEntity(int entityId, List<ECSComponent> components) {
+        insertEntity(entityId, components, ECSJournal.SPAWN);
+    }
+
+    private void insertEntity(int entityId, List<ECSComponent> source, int kind) {
+        // the component list is modified by addComponent and removeComponent
+        final List<ECSComponent> components = new ArrayList<>(source);
         eId2data.put(entityId, components);
+        eIdPeak = Math.max(eIdPeak, eId2data.size());
+        for (ECSComponent component : components) {
+            addBuffer(entityId, component);
+        }
+        final ECSComposition composition = getOrCreateComposition(componentIds(components));
+        composition.add(entityId);
+        composition.bind(components, composition.entities().slots() - 1);
+        eId2composition.put(entityId, composition);
+        if (!sparse.isEmpty()) {
+            for (ECSComponent component : components) {
+                final ECSSparseSet set = sparseSet(component.getClass());
+                if (set != null) {
+                    set.add(entityId, component);
+                }
+            }
+        }
+        if (!codecs.isEmpty()) {
+            journal.record(tick, kind, entityId, 0);
+        }
+    }
+
+    /**
+     * @return the component ids of the components stored in the composition
+     * tables (without the sparse components)
+     */
+    private BitSet componentIds(List<ECSComponent> components) {
+        final BitSet cids = new BitSet();
+        for (int i = 0, n = components.size(); i < n; i++) {
+            cids.set(ECSArchetype.Builder.getOrCreateComponentId(components.get(i).getClass()));
+        }
+        if (!sparse.isEmpty()) {
+            cids.andNot(sparse);
+        }
+        return cids;
+    }
+
+    /**
+     * @return the sparse set of the component type or null if the component
+     * type is stored in the composition tables
+     */
+    private ECSSparseSet sparseSet(Class<? extends ECSComponent> component) {
+        return sparse.isEmpty() ? null : cid2sparse.get(ECSArchetype.Builder.getOrCreateComponentId(component));
+    }
+
+    /**
+     * @return the part of the archetype matched against the composition
+     * tables
+     */
+    private ECSArchetype dense(ECSArchetype archetype) {
+        final ECSJoin join = archetype2join.isEmpty() ? null : archetype2join.get(archetype);
+        return join == null ? archetype : join.dense();
+    }
+
+    /**
+     * Stores a component type in a standalone sparse set instead of the
+     * composition tables. Adding and removing such a component does not move
+     * the entity to another composition, which suits components toggled many
+     * times per second (e.g. status effects). Systems constraining sparse
+     * components join both storages, driven by the smaller one. Must be called
+     * before entities or systems use the component type.
+     *
+     * @param component the component type
+     * @return this entity manager
+     */
+    public ECSEntityManager sparse(Class<? extends ECSComponent> component) {
+        final int cid = ECSArchetype.Builder.getOrCreateComponentId(component);
+        if (cid2compositions.containsKey(cid) || archetype2eids.keySet().stream().anyMatch(archetype -> constrains(archetype, cid))) {
+            throw new IllegalStateException(component.getName() + " is already stored in the composition tables");
+        }
+        sparse.set(cid);
+        cid2sparse.putIfAbsent(cid, new ECSSparseSet());
+        return this;
+    }
 
-        // assign to archetpye
-        final List<Class<? extends ECSComponent>> tmp = components.stream().map(ECSComponent::getClass).collect(Collectors.toList());
-        for (Entry<ECSArchetype, List<Integer>> entry : archetype2eids.entrySet()) {
-            if (entry.getKey().valid(tmp)) {
-                entry.getValue().add(entityId);
+    private static boolean constrains(ECSArchetype archetype, int cid) {
+        return IntStream.of(archetype.all()).anyMatch(e -> e == cid)
+                || IntStream.of(archetype.any()).anyMatch(e -> e == cid)
+                || IntStream.of(archetype.none()).anyMatch(e -> e == cid);
+    }
+
+    private ECSComposition getOrCreateComposition(BitSet cids) {
+        ECSComposition composition = compositions.get(cids);
+        if (composition == null) {
+            composition = new ECSComposition(cids);
+            compositions.put(cids, composition);
+            for (int cid = cids.nextSetBit(0); cid >= 0; cid = cids.nextSetBit(cid + 1)) {
+                cid2compositions.computeIfAbsent(cid, e -> new ArrayList<>()).add(composition);
+            }
+            for (ECSArchetype archetype : candidateArchetypes(cids)) {
+                if (dense(archetype).valid(cids)) {
+                    composition.archetypes().add(archetype2eids.get(archetype));
+                }
             }
         }
+        return composition;
+    }
 
-        return entityId;
+    /**
+     * Only archetypes which require one of the components (or which require
+     * none at all) can match a composition.
+     */
+    private Set<ECSArchetype> candidateArchetypes(BitSet cids) {
+        final Set<ECSArchetype> candidates = new HashSet<>(unconstrained);
+        for (int cid = cids.nextSetBit(0); cid >= 0; cid = cids.nextSetBit(cid + 1)) {
+            final List<ECSArchetype> archetypes = cid2archetypes.get(cid);
+            if (archetypes != null) {
+                candidates.addAll(archetypes);
+            }
+        }
+        return candidates;
+    }
+
+    /**
+     * Only compositions containing the rarest of the all components (or one
+     * of the any components) can match an archetype.
+     *
+     * @param dense the part of the archetype matched against the composition
+     * tables, see {@link #dense(ECSArchetype)}
+     */
+    private Collection<ECSComposition> candidateCompositions(ECSArchetype dense) {
+        if (dense.all().length > 0) {
+            List<ECSComposition> candidates = null;
+            for (int cid : dense.all()) {
+                final List<ECSComposition> tmp = cid2compositions.getOrDefault(cid, Collections.emptyList());
+                if (candidates == null || tmp.size() < candidates.size()) {
+                    candidates = tmp;
+                }
+            }
+            return candidates;
+        }
+        if (dense.any().length > 0) {
+            final Set<ECSComposition> candidates = new HashSet<>();
+            for (int cid : dense.any()) {
+                candidates.addAll(cid2compositions.getOrDefault(cid, Collections.emptyList()));
+            }
+            return candidates;
+        }
+        return compositions.values();
+    }
+
+    private void indexArchetype(ECSArchetype archetype) {
+        final ECSArchetype dense = dense(archetype);
+        final int[] cids = dense.all().length > 0 ? new int[]{dense.all()[0]} : dense.any();
+        if (cids.length == 0) {
+            unconstrained.add(archetype);
+        }
+        for (int cid : cids) {
+            cid2archetypes.computeIfAbsent(cid, e -> new ArrayList<>()).add(archetype);
+        }
     }
 
     public ECSEntityManager addComponent(int entityId, ECSComponent component) {
         if (hasEntity(entityId)) {
-            eId2data.get(entityId).add(component);
-            final List<Class<? extends ECSComponent>> tmp = eId2data.get(entityId).stream().map(ECSComponent::getClass).collect(Collectors.toList());
-            // Check if the archetype for the entityId is still valid
-            for (Entry<ECSArchetype, List<Integer>> entry : archetype2eids.entrySet()) {
-                if (entry.getValue().contains(entityId) && !entry.getKey().valid(tmp)) {
-                    // Remove entity for archetype
-                    entry.getValue().remove((Integer) entityId);
-                }
+            final List<ECSComponent> components = eId2data.get(entityId);
+            components.add(component);
+            addBuffer(entityId, component);
+            final ECSSparseSet set = sparseSet(component.getClass());
+            if (set != null) {
+                set.add(entityId, component);
+            } else {
+                moveEntity(entityId, componentIds(components));
             }
+            journalChange(entityId, component.getClass());
         }
         return this;
     }
 
+    /**
+     * Removes the component of the given type from an entity.
+     *
+     * @param entityId the entity id
+     * @param component the component type
+     * @return true if the entity had a component of the type
+     */
+    public boolean removeComponent(int entityId, Class<? extends ECSComponent> component) {
+        final List<ECSComponent> components = eId2data.get(entityId);
+        if (components == null) {
+            return false;
+        }
+        for (int i = 0, n = components.size(); i < n; i++) {
+            if (components.get(i).getClass() == component) {
+                final ECSComponent removed = components.remove(i);
+                if (removed instanceof ECSBufferedComponent) {
+                    eId2buffers.get(entityId).removeIf(buffered -> buffered == removed);
+                }
+                if (removed instanceof ECSColumnComponent) {
+                    ((ECSColumnComponent) removed).unbind();
+                }
+                final ECSSparseSet set = sparseSet(component);
+                if (set != null) {
+                    set.remove(entityId);
+                } else {
+                    moveEntity(entityId, componentIds(components));
+                }
+                final int type = codecs.type(component);
+                if (type >= 0) {
+                    journal.record(tick, ECSJournal.REMOVE, entityId, type);
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void moveEntity(int entityId, BitSet cids) {
+        final ECSComposition from = eId2composition.get(entityId);
+        final ECSComposition to = getOrCreateComposition(cids);
+        if (from == to) {
+            return;
+        }
+        from.entities().remove(entityId);
+        to.entities().add(entityId);
+        to.bind(eId2data.get(entityId), to.entities().slots() - 1);
+        // Archetypes matching both compositions keep the entity in place
+        for (ECSEntityList entityIds : from.archetypes()) {
+            if (!to.archetypes().contains(entityIds)) {
+                entityIds.remove(entityId);
+                if (!codecs.isEmpty()) {
+                    journal.leave(tick, entityIds, entityId);
+                }
+            }
+        }
+        for (ECSEntityList entityIds : to.archetypes()) {
+            if (!from.archetypes().contains(entityIds)) {
+                entityIds.add(entityId);
+            }
+        }
+        eId2composition.put(entityId, to);
+    }
+
     public boolean hasComponent(int entityId, ECSComponent component) {
         if (hasEntity(entityId)) {
             return eId2data.get(entityId).contains(component);
@@ -106,39 +446,314 @@ public final class ECSEntityManager {
 
     public boolean removeEntity(int entityId) {
         if (hasEntity(entityId)) {
-            for (List<Integer> entityIds : archetype2eids.values()) {
-                entityIds.removeIf(e -> e == entityId);
-            }
-            eId2data.remove(entityId);
+            release(entityId).remove(entityId);
             return true;
         }
         return false;
     }
 
+    /**
+     * Removes the entity from all stores except its composition.
+     *
+     * @return the composition of the entity
+     */
+    private ECSComposition release(int entityId) {
+        if (!sparse.isEmpty()) {
+            for (ECSComponent component : eId2data.get(entityId)) {
+                final ECSSparseSet set = sparseSet(component.getClass());
+                if (set != null) {
+                    set.remove(entityId);
+                }
+            }
+        }
+        for (ECSComponent component : eId2data.remove(entityId)) {
+            if (component instanceof ECSColumnComponent) {
+                ((ECSColumnComponent) component).unbind();
+            }
+        }
+        eId2buffers.remove(entityId);
+        if (!codecs.isEmpty()) {
+            journal.record(tick, ECSJournal.DESTROY, entityId, 0);
+        }
+        return eId2composition.remove(entityId);
+    }
+
+    /**
+     * Looks up the components of an entity, e.g. the target of an event (see
+     * {@link ECSEventSystem}). The list must not be modified, see
+     * {@link #addComponent(int, ECSComponent)} and
+     * {@link #removeComponent(int, Class)}.
+     *
+     * @param entityId the entity id
+     * @return the components of the entity or null if it does not exist
+     */
+    public List<ECSComponent> components(int entityId) {
+        return eId2data.get(entityId);
+    }
+
+    /**
+     * Iterates all entities. The entities must not be added or removed during
+     * the iteration.
+     *
+     * @param consumer receives the components and the id of each entity
+     */
+    void forEachEntity(ObjIntConsumer<List<ECSComponent>> consumer) {
+        for (Entry<Integer, List<ECSComponent>> entry : eId2data.entrySet()) {
+            consumer.accept(entry.getValue(), entry.getKey());
+        }
+    }
+
+    /**
+     * Removes the entities and returns their components, e.g. to move them
+     * into another world with {@link #attachEntity(int, List)}. Each entity
+     * list of the affected compositions is scanned once for the whole batch.
+     *
+     * @param entityIds the entity ids
+     * @param count the number of entity ids to use
+     * @return the components of each entity, null for missing entities
+     */
+    List<List<ECSComponent>> detachEntities(int[] entityIds, int count) {
+        final List<List<ECSComponent>> detached = new ArrayList<>(count);
+        final Set<ECSComposition> compositions = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (int i = 0; i < count; i++) {
+            final List<ECSComponent> components = eId2data.get(entityIds[i]);
+            detached.add(components);
+            if (components != null) {
+                compositions.add(release(entityIds[i]));
+            }
+        }
+        final int[] sorted = Arrays.copyOf(entityIds, count);
+        Arrays.sort(sorted);
+        for (ECSComposition composition : compositions) {
+            composition.removeAll(sorted);
+        }
+        return detached;
+    }
+
+    /**
+     * Inserts an entity under an id allocated by another world sharing the
+     * entity id sequence (see {@link #entityIds(AtomicInteger)}).
+     *
+     * @param entityId the entity id
+     * @param components the components of the entity
+     */
+    void attachEntity(int entityId, List<ECSComponent> components) {
+        insertEntity(entityId, components);
+    }
+
+    private void addBuffer(int entityId, ECSComponent component) {
+        if (component instanceof ECSBufferedComponent) {
+            final ECSBufferedComponent<?> buffered = (ECSBufferedComponent<?>) component;
+            buffered.buffer();
+            eId2buffers.computeIfAbsent(entityId, e -> new ArrayList<>(2)).add(buffered);
+        }
+    }
+
     public ECSEntityManager createSystem(ECSSystem system) {
+        // event systems iterate the events of their channel, not entities
+        final ECSArchetype archetype = system instanceof ECSEventSystem ? null : system.archetype();
+        if (system instanceof ECSChunkSystem && !sparse.isEmpty() && ECSJoin.of(archetype, sparse, cid2sparse) != null) {
+            throw new IllegalArgumentException("Chunk systems do not support sparse components");
+        }
         final int systemId = getOrCreateSystemId(system.getClass());
-        final ECSArchetype archetype = system.archetype();
         sId2data.put(systemId, system);
-        sId2archetype.put(systemId, archetype);
-
-        // If the system is added after entities have been created all entities have to be checked
-        if (!archetype2eids.containsKey(archetype) && eId2data.size() > 0) {
-            archetype2eids.computeIfAbsent(archetype, e -> new ArrayList());
-            assignEntities2Archetype(archetype, eId2data);
+        final ECSArchetype previousArchetype = sId2archetype.put(systemId, archetype);
+        final ECSBudget budget = system.budget();
+        if (budget.limited() && !(system instanceof ECSChunkSystem)) {
+            sId2budget.put(systemId, budget);
+            // the cursor and the slots visited in the current tick
+            sId2cursor.put(systemId, new int[3]);
         } else {
-            archetype2eids.computeIfAbsent(archetype, e -> new ArrayList());
+            sId2budget.remove(systemId);
+            sId2cursor.remove(systemId);
+        }
+        final Integer previousPhase = sId2phase.put(systemId, system.phase());
+        if (previousPhase != null) {
+            removePhase(systemId, previousPhase);
+        }
+        phase2sIds.computeIfAbsent(system.phase(), e -> new ArrayList<>(4)).add(systemId);
+
+        // If the system is added after entities have been created the matching compositions have to be assigned
+        if (archetype != null && !archetype2eids.containsKey(archetype)) {
+            final ECSEntityList entityIds = new ECSEntityList();
+            archetype2eids.put(archetype, entityIds);
+            final ECSJoin join = sparse.isEmpty() ? null : ECSJoin.of(archetype, sparse, cid2sparse);
+            if (join != null) {
+                archetype2join.put(archetype, join);
+            }
+            indexArchetype(archetype);
+            assignEntities2Archetype(archetype, entityIds);
+        }
+        if (previousArchetype != null && !previousArchetype.equals(archetype)) {
+            pruneArchetype(previousArchetype);
         }
 
         return this;
     }
 
-    private void assignEntities2Archetype(ECSArchetype archetype, Map<Integer, List<ECSComponent>> eId2data) {
-        for (Entry<Integer, List<ECSComponent>> entry : eId2data.entrySet()) {
-            final List<Class<? extends ECSComponent>> tmp = entry.getValue().stream().map(ECSComponent::getClass).collect(Collectors.toList());
-            if (archetype.valid(tmp)) {
-                archetype2eids.get(archetype).add(entry.getKey());
+    /**
+     * Replaces a system by a system of another class, e.g. to hot-swap an
+     * implementation. The membership of a shared archetype is kept. If the
+     * previous system is not registered the system is just created.
+     *
+     * @param previous the class of the system to replace
+     * @param system the new system
+     * @return this entity manager
+     */
+    public ECSEntityManager replaceSystem(Class<? extends ECSSystem> previous, ECSSystem system) {
+        createSystem(system);
+        if (previous != system.getClass()) {
+            removeSystem(previous);
+        }
+        return this;
+    }
+
+    /**
+     * Removes a system. The membership of its archetype is dropped if no other
+     * system uses the archetype and is rebuilt when a system needs it again.
+     * Must not be called during {@link #update()}.
+     *
+     * @param system the class of the system
+     * @return true if the system existed
+     */
+    public boolean removeSystem(Class<? extends ECSSystem> system) {
+        final Integer systemId = sClass2sId.remove(system);
+        if (systemId == null) {
+            return false;
+        }
+        sId2data.remove(systemId);
+        sId2budget.remove(systemId);
+        sId2cursor.remove(systemId);
+        disabled.remove(systemId);
+        removePhase(systemId, sId2phase.remove(systemId));
+        pruneArchetype(sId2archetype.remove(systemId));
+        return true;
+    }
+
+    /**
+     * Pauses a system. A disabled system keeps its archetype membership and
+     * budget cursor, so enabling it again is cheap.
+     *
+     * @param system the class of the system
+     * @return this entity manager
+     */
+    public ECSEntityManager disableSystem(Class<? extends ECSSystem> system) {
+        final Integer systemId = sClass2sId.get(system);
+        if (systemId != null) {
+            disabled.add(systemId);
+        }
+        return this;
+    }
+
+    /**
+     * @param system the class of the system
+     * @return this entity manager
+     */
+    public ECSEntityManager enableSystem(Class<? extends ECSSystem> system) {
+        final Integer systemId = sClass2sId.get(system);
+        if (systemId != null) {
+            disabled.remove(systemId);
+        }
+        return this;
+    }
+
+    /**
+     * @param system the class of the system
+     * @return true if the system exists and is not disabled
+     */
+    public boolean isSystemEnabled(Class<? extends ECSSystem> system) {
+        final Integer systemId = sClass2sId.get(system);
+        return systemId != null && !disabled.contains(systemId);
+    }
+
+    private void pruneArchetype(ECSArchetype archetype) {
+        if (archetype == null || sId2archetype.containsValue(archetype)) {
+            return;
+        }
+        final ECSEntityList entityIds = archetype2eids.remove(archetype);
+        if (entityIds == null) {
+            return;
+        }
+        archetype2join.remove(archetype);
+        unconstrained.remove(archetype);
+        for (List<ECSArchetype> archetypes : cid2archetypes.values()) {
+            archetypes.remove(archetype);
+        }
+        for (ECSComposition composition : compositions.values()) {
+            composition.removeArchetype(entityIds);
+        }
+    }
+
+    private void assignEntities2Archetype(ECSArchetype archetype, ECSEntityList entityIds) {
+        final ECSArchetype dense = dense(archetype);
+        for (ECSComposition composition : candidateCompositions(dense)) {
+            if (dense.valid(composition.cids())) {
+                composition.archetypes().add(entityIds);
+                composition.entities().forEach(entityIds::add);
+            }
+        }
+    }
+
+    /**
+     * Creates an on-demand query over the entities matching the archetype. The
+     * archetype does not have to belong to a system; if it does, its
+     * membership list is reused, otherwise the matching compositions are
+     * resolved once when the query is created. The query must not be used
+     * while entities are created, removed or change their components.
+     *
+     * @param archetype the archetype
+     * @return the query
+     */
+    public ECSQuery query(ECSArchetype archetype) {
+        ECSJoin join = archetype2join.get(archetype);
+        if (join == null && !sparse.isEmpty()) {
+            join = ECSJoin.of(archetype, sparse, cid2sparse);
+        }
+        final ECSEntityList entityIds = archetype2eids.get(archetype);
+        if (entityIds != null) {
+            return new ECSQuery(eId2data, eId2composition, Collections.singletonList(entityIds), join);
+        }
+        final ECSArchetype dense = join == null ? archetype : join.dense();
+        final List<ECSEntityList> sources = new ArrayList<>();
+        for (ECSComposition composition : candidateCompositions(dense)) {
+            if (dense.valid(composition.cids())) {
+                sources.add(composition.entities());
             }
         }
+        return new ECSQuery(eId2data, eId2composition, sources, join);
+    }
+
+    private void removePhase(int systemId, int phase) {
+        final List<Integer> systemIds = phase2sIds.get(phase);
+        systemIds.remove(Integer.valueOf(systemId));
+        if (systemIds.isEmpty()) {
+            phase2sIds.remove(phase);
+        }
+    }
+
+    /**
+     * Creates an event channel between the systems of this world. The channel
+     * is cleared at the end of each {@link #update()}.
+     *
+     * @param <E> the event type
+     * @param factory creates the reusable event instances
+     * @return the channel
+     */
+    public <E> ECSChannel<E> channel(Supplier<E> factory) {
+        final ECSChannel<E> channel = new ECSChannel<>(factory);
+        channels.add(channel);
+        return channel;
+    }
+
+    /**
+     * Closes the channels of this world, see {@link ECSChannel#close()}. Must
+     * not be called during {@link #update()}.
+     */
+    public void dispose() {
+        for (ECSChannel<?> channel : channels) {
+            channel.close();
+        }
+        channels.clear();
     }
 
     public boolean hasSystem(Class<? extends ECSSystem> system) {
@@ -154,14 +769,61 @@ public final class ECSEntityManager {
     }
 
     public void update() {
-        CompletableFuture[] futures = new CompletableFuture[sId2archetype.size()];
+        beginTick();
+        runSystems();
+        endTick();
+    }
+
+    /**
+     * Shares the entity id sequence with other worlds, so entity ids are
+     * unique across all of them (see {@link ECSShards}). Must be set before
+     * the first entity is created.
+     *
+     * @param sequence the shared sequence
+     * @return this entity manager
+     */
+    ECSEntityManager entityIds(AtomicInteger sequence) {
+        if (!eId2data.isEmpty() || !staging.isEmpty()) {
+            throw new IllegalStateException("Entities have already been created");
+        }
+        this.eIdSeq = sequence;
+        return this;
+    }
+
+    /**
+     * First phase of {@link #update()}: merges the staged entities.
+     */
+    void beginTick() {
+        mergeStaged();
+    }
+
+    /**
+     * Second phase of {@link #update()}: runs the systems phase by phase. The
+     * entities and their compositions are not modified during this phase.
+     */
+    void runSystems() {
+        for (List<Integer> systemIds : phase2sIds.values()) {
+            runPhase(systemIds);
+        }
+    }
+
+    private void runPhase(List<Integer> systemIds) {
+        final Executor executor = this.executor;
+        final CompletableFuture<?>[] futures = new CompletableFuture<?>[systemIds.size()];
         int index = 0;
-        for (Entry<Integer, ECSArchetype> entry : sId2archetype.entrySet()) {
+        for (Integer systemId : systemIds) {
+            if (!disabled.isEmpty() && disabled.contains(systemId)) {
+                futures[index++] = CompletableFuture.completedFuture(null);
+                continue;
+            }
+            final ECSArchetype archetype = sId2archetype.get(systemId);
             futures[index] = CompletableFuture.runAsync(()
                     -> runSystem(
-                            sId2data.get(entry.getKey()),
-                            archetype2eids.get(entry.getValue())
-                    )
+                            systemId,
+                            sId2data.get(systemId),
+                            archetype,
+                            archetype2eids.get(archetype)
+                    ), executor
             );
             index++;
         }
@@ -172,8 +834,861 @@ public final class ECSEntityManager {
         }
     }
 
-    private void runSystem(ECSSystem system, List<Integer> entities) {
-        entities.stream().map(eId2data::get).forEach(system::update);
+    /**
+     * Last phase of {@link #update()}: swaps the buffered components, records
+     * the writes of the systems and compacts the entity lists.
+     */
+    void endTick() {
+        for (int i = channels.size() - 1; i >= 0; i--) {
+            if (channels.get(i).closed()) {
+                channels.remove(i);
+            } else {
+                channels.get(i).clear();
+            }
+        }
+        swapBuffers();
+        if (!codecs.isEmpty()) {
+            journalWrites();
+        }
+        tick++;
+        if (!codecs.isEmpty()) {
+            journal.trim(tick - deltaRetention);
+            journalStart = Math.max(journalStart, tick - deltaRetention);
+        }
+        if (compactionBudget > 0) {
+            compact(compactionBudget);
+        }
+    }
+
+    private void runChunkSystem(ECSChunkSystem system, ECSEntityList entities) {
+        final ECSChunk chunk = new ECSChunk();
+        for (ECSComposition composition : compositions.values()) {
+            if (!composition.archetypes().contains(entities)) {
+                continue;
+            }
+            final int slots = composition.entities().slots();
+            for (int offset = 0; offset < slots; offset += ECSChunk.CAPACITY) {
+                chunk.set(composition, offset, Math.min(ECSChunk.CAPACITY, slots - offset));
+                system.update(chunk);
+            }
+        }
+    }
+
+    private static <E> void runEventSystem(ECSEventSystem<E> system) {
+        system.channel().forEach(system::update);
+    }
+
+    private void swapBuffers() {
+        for (List<ECSBufferedComponent<?>> buffers : eId2buffers.values()) {
+            for (ECSBufferedComponent<?> buffer : buffers) {
+                buffer.swap();
+            }
+        }
+    }
+
+    private void runSystem(int systemId, ECSSystem system, ECSArchetype archetype, ECSEntityList entities) {
+        if (system instanceof ECSEventSystem) {
+            runEventSystem((ECSEventSystem<?>) system);
+            return;
+        }
+        if (system instanceof ECSChunkSystem) {
+            runChunkSystem((ECSChunkSystem) system, entities);
+            return;
+        }
+        final ECSJoin join = archetype2join.isEmpty() ? null : archetype2join.get(archetype);
+        final int[] cursor = sId2cursor.isEmpty() ? null : sId2cursor.get(systemId);
+        if (cursor != null) {
+            runBudgetedSystem(system, sId2budget.get(systemId), join, entities, cursor);
+            return;
+        }
+        if (system instanceof ECSBatchSystem) {
+            runBatchSystem((ECSBatchSystem) system, join, entities);
+            return;
+        }
+        final Map<Integer, List<ECSComponent>> eId2data = this.eId2data;
+        if (join != null) {
+            join.forEach(entities, eId2composition, entityId -> system.update(eId2data.get(entityId)));
+            return;
+        }
+        for (int i = 0, slots = entities.slots(); i < slots; i++) {
+            final int entityId = entities.get(i);
+            if (entityId != ECSEntityList.HOLE) {
+                system.update(eId2data.get(entityId));
+            }
+        }
+    }
+
+    private void runBatchSystem(ECSBatchSystem system, ECSJoin join, ECSEntityList entities) {
+        final Map<Integer, List<ECSComponent>> eId2data = this.eId2data;
+        final ECSBatch batch = new ECSBatch();
+        if (join != null) {
+            join.forEach(entities, eId2composition, entityId -> {
+                if (batch.add(entityId, eId2data.get(entityId))) {
+                    system.update(batch);
+                    batch.clear();
+                }
+            });
+        } else {
+            for (int i = 0, slots = entities.slots(); i < slots; i++) {
+                final int entityId = entities.get(i);
+                if (entityId != ECSEntityList.HOLE && batch.add(entityId, eId2data.get(entityId))) {
+                    system.update(batch);
+                    batch.clear();
+                }
+            }
+        }
+        if (batch.size() > 0) {
+            system.update(batch);
+            batch.clear();
+        }
+    }
+
+    /**
+     * Processes the entities from the cursor on until the budget is used up
+     * and moves the cursor behind the last processed entity, or back to the
+     * start once the pass is complete. New entities are appended to the
+     * membership list and removed ones leave a hole, so the slots behind the
+     * cursor are stable between ticks (see {@link #compactArchetype}). The
+     * visited slots are kept in the cursor for {@link #journalWrites()}.
+     */
+    private void runBudgetedSystem(ECSSystem system, ECSBudget budget, ECSJoin join, ECSEntityList entities, int[] cursor) {
+        final Map<Integer, List<ECSComponent>> eId2data = this.eId2data;
+        final ECSBatch batch = system instanceof ECSBatchSystem ? new ECSBatch() : null;
+        final int limit = budget.entities() > 0 ? budget.entities() : Integer.MAX_VALUE;
+        final long deadline = System.nanoTime() + budget.nanos();
+        final int slots = entities.slots();
+        int slot = cursor[0];
+        int visited = 0;
+        for (; slot < slots && visited < limit; slot++) {
+            final int entityId = entities.get(slot);
+            if (entityId == ECSEntityList.HOLE || (join != null && !join.accept(entityId, eId2composition))) {
+                continue;
+            }
+            visited++;
+            if (batch == null) {
+                system.update(eId2data.get(entityId));
+            } else if (batch.add(entityId, eId2data.get(entityId))) {
+                ((ECSBatchSystem) system).update(batch);
+                batch.clear();
+            } else {
+                continue;
+            }
+            if (budget.nanos() > 0 && System.nanoTime() - deadline >= 0) {
+                slot++;
+                break;
+            }
+        }
+        if (batch != null && batch.size() > 0) {
+            ((ECSBatchSystem) system).update(batch);
+            batch.clear();
+        }
+        cursor[1] = cursor[0];
+        cursor[2] = slot;
+        cursor[0] = slot < slots ? slot : 0;
+    }
+
+    /**
+     * Configures the automatic compaction which runs at the end of each
+     * {@link #update()}. Archetypes whose fragmentation (see
+     * {@link ECSStatistics#fragmentation()}) exceeds the threshold are
+     * compacted until the time budget of the tick is used up; the remaining
+     * archetypes are compacted on the following ticks. Large lists are
+     * compacted in steps which are resumed on the next tick and keep the order
+     * of the entities, {@link #compact()} also restores the order.
+     *
+     * @param budgetNanos the time budget per tick in nanoseconds, 0 disables
+     * the automatic compaction
+     * @param threshold the fragmentation (0 - 1) above which an archetype is
+     * compacted
+     * @return this entity manager
+     */
+    public ECSEntityManager compaction(long budgetNanos, double threshold) {
+        this.compactionBudget = budgetNanos;
+        this.compactionThreshold = threshold;
+        return this;
+    }
+
+    /**
+     * Sets the order in which the entities of an archetype are kept by the
+     * compaction and therefore visited by its systems. By default entities are
+     * ordered by id.
+     *
+     * @param archetype the archetype
+     * @param order the sort key or null to order by id
+     * @return this entity manager
+     */
+    public ECSEntityManager order(ECSArchetype archetype, Comparator<List<ECSComponent>> order) {
+        if (order == null) {
+            archetype2order.remove(archetype);
+        } else {
+            archetype2order.put(archetype, order);
+        }
+        final ECSEntityList entityIds = archetype2eids.get(archetype);
+        if (entityIds != null) {
+            compactArchetype(archetype, entityIds);
+        }
+        return this;
+    }
+
+    /**
+     * Compacts the storage of all archetypes regardless of their
+     * fragmentation.
+     */
+    public void compact() {
+        for (ECSArchetype archetype : archetype2eids.keySet()) {
+            compactArchetype(archetype, archetype2eids.get(archetype));
+        }
+        for (ECSComposition composition : compositions.values()) {
+            composition.compact(eId2data);
+        }
+        eId2data.shrink();
+        eId2data.migrate(Integer.MAX_VALUE);
+        eId2composition.shrink();
+        eId2composition.migrate(Integer.MAX_VALUE);
+        eIdPeak = eId2data.size();
+    }
+
+    private void compact(long budgetNanos) {
+        final long deadline = System.nanoTime() + budgetNanos;
+        if (!compactEntities(deadline)) {
+            return;
+        }
+        for (Entry<ECSArchetype, ECSEntityList> entry : archetype2eids.entrySet()) {
+            final ECSEntityList entityIds = entry.getValue();
+            if (!fragmented(entityIds)) {
+                continue;
+            }
+            if (entityIds.slots() <= COMPACTION_STEP && !entityIds.compacting()) {
+                compactArchetype(entry.getKey(), entityIds);
+            } else {
+                while (!compactArchetype(entry.getKey(), entityIds, COMPACTION_STEP)) {
+                    if (System.nanoTime() - deadline >= 0) {
+                        return;
+                    }
+                }
+            }
+            if (System.nanoTime() - deadline >= 0) {
+                return;
+            }
+        }
+        for (ECSComposition composition : compositions.values()) {
+            final ECSEntityList entityIds = composition.entities();
+            if (!fragmented(entityIds)) {
+                continue;
+            }
+            if (entityIds.slots() <= COMPACTION_STEP && !entityIds.compacting()) {
+                composition.compact(eId2data);
+            } else {
+                while (!composition.compact(eId2data, COMPACTION_STEP)) {
+                    if (System.nanoTime() - deadline >= 0) {
+                        return;
+                    }
+                }
+            }
+            if (System.nanoTime() - deadline >= 0) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Small lists are compacted at once and sorted, larger lists in steps
+     * which only remove the holes.
+     */
+    private boolean fragmented(ECSEntityList entityIds) {
+        if (entityIds.compacting() || entityIds.oversized()) {
+            return true;
+        }
+        return entityIds.fragmentation() > compactionThreshold
+                && (entityIds.holes() > 0 || entityIds.slots() <= COMPACTION_STEP);
+    }
+
+    /**
+     * Compacts the membership list of an archetype, keeping the cursors of
+     * the budgeted systems of the archetype valid.
+     */
+    private void compactArchetype(ECSArchetype archetype, ECSEntityList entityIds) {
+        journal.freeze(entityIds);
+        final List<int[]> cursors = cursors(archetype);
+        if (cursors.isEmpty()) {
+            entityIds.compact(comparator(archetype));
+            return;
+        }
+        final int[] slots = slots(cursors);
+        entityIds.compact(comparator(archetype), slots);
+        for (int i = 0; i < slots.length; i++) {
+            cursors.get(i)[0] = slots[i];
+        }
+    }
+
+    /**
+     * Performs one step of the incremental compaction of a membership list.
+     *
+     * @return true once the list is compact
+     */
+    private boolean compactArchetype(ECSArchetype archetype, ECSEntityList entityIds, int step) {
+        journal.freeze(entityIds);
+        final List<int[]> cursors = cursors(archetype);
+        final int[] slots = slots(cursors);
+        final boolean done = entityIds.compact(step, slots, null);
+        for (int i = 0; i < slots.length; i++) {
+            cursors.get(i)[0] = slots[i];
+        }
+        return done;
+    }
+
+    private List<int[]> cursors(ECSArchetype archetype) {
+        final List<int[]> cursors = new ArrayList<>(0);
+        for (Entry<Integer, int[]> entry : sId2cursor.entrySet()) {
+            if (entry.getValue()[0] > 0 && archetype.equals(sId2archetype.get(entry.getKey()))) {
+                cursors.add(entry.getValue());
+            }
+        }
+        return cursors;
+    }
+
+    private static int[] slots(List<int[]> cursors) {
+        final int[] slots = new int[cursors.size()];
+        for (int i = 0; i < slots.length; i++) {
+            slots[i] = cursors.get(i)[0];
+        }
+        return slots;
+    }
+
+    /**
+     * Moves the entity maps into smaller tables once most entities are gone,
+     * one step of entity ids at a time.
+     *
+     * @return false if the deadline passed before the maps were moved
+     */
+    private boolean compactEntities(long deadline) {
+        if (!eId2data.shrinking() && eIdPeak > EID_PEAK_MIN && eId2data.size() < eIdPeak / 4) {
+            eId2data.shrink();
+            eId2composition.shrink();
+        }
+        if (!eId2data.shrinking() && !eId2composition.shrinking()) {
+            return true;
+        }
+        boolean done = false;
+        while (!done) {
+            done = eId2data.migrate(COMPACTION_STEP);
+            done = eId2composition.migrate(COMPACTION_STEP) && done;
+            if (!done && System.nanoTime() - deadline >= 0) {
+                return false;
+            }
+        }
+        eIdPeak = eId2data.size();
+        return System.nanoTime() - deadline < 0;
+    }
+
+    private Comparator<Integer> comparator(ECSArchetype archetype) {
+        final Comparator<List<ECSComponent>> order = archetype2order.get(archetype);
+        if (order == null) {
+            return null;
+        }
+        final Map<Integer, List<ECSComponent>> eId2data = this.eId2data;
+        return Comparator.comparing(eId2data::get, order);
+    }
+
+    /**
+     * Registers the codec of a replicated component type, see
+     * {@link #delta(long)}. The sending and the receiving world have to
+     * register the same codecs in the same order. Changes are journaled from
+     * the registration of the first codec on, entities created before have to
+     * be transferred with {@link #snapshot()}.
+     *
+     * @param <T> the component type
+     * @param type the component type
+     * @param codec decodes the component
+     * @param encoder encodes the component in the format read by the codec, a
+     * {@link java.nio.BufferOverflowException} is handled by growing the
+     * buffer and encoding again
+     * @return this entity manager
+     */
+    public <T extends ECSComponent> ECSEntityManager codec(Class<T> type, ECSComponentCodec<T> codec, BiConsumer<T, ByteBuffer> encoder) {
+        Objects.requireNonNull(codec, "codec");
+        Objects.requireNonNull(encoder, "encoder");
+        if (codecs.isEmpty()) {
+            journalStart = tick;
+        }
+        codecs.register(type, codec, encoder);
+        return this;
+    }
+
+    /**
+     * Sets the number of ticks for which changes are kept for
+     * {@link #delta(long)}. Defaults to 32 ticks.
+     *
+     * @param ticks the number of ticks
+     * @return this entity manager
+     */
+    public ECSEntityManager deltaRetention(int ticks) {
+        if (ticks < 1) {
+            throw new IllegalArgumentException("ticks must be positive");
+        }
+        this.deltaRetention = ticks;
+        return this;
+    }
+
+    /**
+     * @return the number of completed {@link #update()} calls
+     */
+    public long tick() {
+        return tick;
+    }
+
+    /**
+     * Marks a replicated component of an entity as modified in the current
+     * tick. Components declared in {@link ECSSystem#writes()} are marked
+     * automatically for all entities of the system, this method is only needed
+     * for modifications outside of such systems. Can be called from any
+     * thread.
+     *
+     * @param entityId the entity id
+     * @param component the component type
+     * @return this entity manager
+     */
+    public ECSEntityManager markChanged(int entityId, Class<? extends ECSComponent> component) {
+        journalChange(entityId, component);
+        return this;
+    }
+
+    private void journalChange(int entityId, Class<? extends ECSComponent> component) {
+        final int type = codecs.type(component);
+        if (type >= 0) {
+            journal.record(tick, ECSJournal.CHANGE, entityId, type);
+        }
+    }
+
+    /**
+     * Records the declared writes of the systems for the slots they visited in
+     * this tick: the whole membership list or the range of a budgeted system.
+     * The writes are conservative, every visited entity is reported whether
+     * the system modified it or not.
+     */
+    private void journalWrites() {
+        for (Entry<Integer, ECSSystem> entry : sId2data.entrySet()) {
+            if (disabled.contains(entry.getKey())) {
+                continue;
+            }
+            final ECSEntityList entityIds = archetype2eids.get(sId2archetype.get(entry.getKey()));
+            if (entityIds == null) {
+                // event systems
+                continue;
+            }
+            final int from = visitedFrom(entry.getKey());
+            final int to = visitedTo(entry.getKey(), entityIds);
+            for (Class<? extends ECSComponent> component : entry.getValue().writes()) {
+                final int type = codecs.type(component);
+                if (type >= 0) {
+                    journal.record(tick, entityIds, from, to, type);
+                }
+            }
+        }
+    }
+
+    /**
+     * Visits the entities the systems declaring one of the component types in
+     * {@link ECSSystem#writes()} visited in this tick. Has to be called after
+     * the systems ran and before the lists are compacted. An entity visited by
+     * several of these systems is passed once per system.
+     *
+     * @param types the component types
+     * @param consumer receives the entity ids
+     */
+    void forEachWritten(Set<Class<? extends ECSComponent>> types, IntConsumer consumer) {
+        for (Entry<Integer, ECSSystem> entry : sId2data.entrySet()) {
+            if (disabled.contains(entry.getKey()) || Collections.disjoint(types, entry.getValue().writes())) {
+                continue;
+            }
+            final ECSEntityList entityIds = archetype2eids.get(sId2archetype.get(entry.getKey()));
+            if (entityIds == null) {
+                continue;
+            }
+            for (int slot = visitedFrom(entry.getKey()), to = visitedTo(entry.getKey(), entityIds); slot < to; slot++) {
+                final int entityId = entityIds.get(slot);
+                if (entityId != ECSEntityList.HOLE) {
+                    consumer.accept(entityId);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the first slot the system visited in this tick
+     */
+    private int visitedFrom(int systemId) {
+        final int[] cursor = sId2cursor.isEmpty() ? null : sId2cursor.get(systemId);
+        return cursor == null ? 0 : cursor[1];
+    }
+
+    /**
+     * @return the slot behind the last slot the system visited in this tick
+     */
+    private int visitedTo(int systemId, ECSEntityList entityIds) {
+        final int[] cursor = sId2cursor.isEmpty() ? null : sId2cursor.get(systemId);
+        return cursor == null ? entityIds.slots() : cursor[2];
+    }
+
+    /**
+     * Extracts the changes of the replicated components since a tick: spawned
+     * and destroyed entities and the modified components of the remaining
+     * entities. Only the changed components are encoded, so the size and the
+     * cost of a delta depend on the rate of change and not on the size of the
+     * world. The delta is applied with {@link #applyDelta(byte[])}.
+     * <b>Example (sending one delta per tick):</b>
+     *
+     * <pre>
+     * long since = em.tick();
+     * em.update();
+     * send(em.delta(since));
+     * </pre>
+     *
+     * @param sinceTick the value of {@link #tick()} when the previous delta
+     * was extracted
+     * @return the encoded delta
+     * @throws IllegalArgumentException if the changes since the tick are no
+     * longer retained, see {@link #deltaRetention(int)}
+     */
+    public byte[] delta(long sinceTick) {
+        if (sinceTick < journalStart) {
+            throw new IllegalArgumentException("Changes since tick " + sinceTick + " are no longer retained, use snapshot()");
+        }
+        final long[] changes = journal.since(sinceTick);
+        ByteBuffer buffer = ByteBuffer.allocate(256);
+        buffer.putLong(sinceTick).putLong(tick).putInt(0);
+        int records = 0;
+        for (int i = 0, j; i < changes.length; i = j) {
+            final int entityId = ECSJournal.entityId(changes[i]);
+            boolean spawned = false;
+            boolean respawned = false;
+            boolean destroyed = false;
+            for (j = i; j < changes.length && ECSJournal.entityId(changes[j]) == entityId; j++) {
+                spawned |= ECSJournal.kind(changes[j]) == ECSJournal.SPAWN;
+                respawned |= ECSJournal.kind(changes[j]) == ECSJournal.RESPAWN;
+                destroyed |= ECSJournal.kind(changes[j]) == ECSJournal.DESTROY;
+            }
+            if (hasEntity(entityId)) {
+                final boolean full = spawned || respawned || destroyed;
+                buffer = encodeEntity(buffer, entityId, full ? null : Arrays.copyOfRange(changes, i, j));
+                records++;
+            } else if (destroyed && !spawned) {
+                // Entities spawned and destroyed within the delta are never seen by the receiver
+                buffer = ECSCodecs.grow(buffer, 5);
+                buffer.putInt(entityId).put((byte) ECSJournal.DESTROY);
+                records++;
+            }
+        }
+        buffer.putInt(16, records);
+        return Arrays.copyOf(buffer.array(), buffer.position());
+    }
+
+    /**
+     * Encodes all entities with their replicated components, e.g. to
+     * initialize a new receiver or one which fell behind the retention of
+     * {@link #delta(long)}. The snapshot is applied with
+     * {@link #applyDelta(byte[])} to an empty world.
+     *
+     * @return the encoded snapshot
+     */
+    public byte[] snapshot() {
+        ByteBuffer buffer = ByteBuffer.allocate(256);
+        buffer.putLong(-1).putLong(tick).putInt(eId2data.size());
+        for (Integer entityId : eId2data.keySet()) {
+            buffer = encodeEntity(buffer, entityId, null);
+        }
+        return Arrays.copyOf(buffer.array(), buffer.position());
+    }
+
+    /**
+     * Encodes a spawn record with all replicated components or, if changes
+     * are given, a change record with the changed and the removed components.
+     */
+    private ByteBuffer encodeEntity(ByteBuffer buffer, int entityId, long[] changes) {
+        buffer = ECSCodecs.grow(buffer, 7);
+        final int position = buffer.position();
+        buffer.putInt(entityId).put((byte) (changes == null ? ECSJournal.SPAWN : ECSJournal.CHANGE)).putShort((short) 0);
+        int count = 0;
+        for (ECSComponent component : eId2data.get(entityId)) {
+            final int type = codecs.type(component.getClass());
+            if (type >= 0 && (changes == null || Arrays.binarySearch(changes, ECSJournal.key(ECSJournal.CHANGE, entityId, type)) >= 0)) {
+                buffer = codecs.encode(buffer, type, component);
+                count++;
+            }
+        }
+        buffer.putShort(position + 5, (short) count);
+        if (changes != null) {
+            buffer = ECSCodecs.grow(buffer, 2);
+            final int removedPosition = buffer.position();
+            buffer.putShort((short) 0);
+            int removed = 0;
+            for (long change : changes) {
+                if (ECSJournal.kind(change) == ECSJournal.REMOVE && !hasType(entityId, ECSJournal.type(change))) {
+                    buffer = ECSCodecs.grow(buffer, 2);
+                    buffer.putShort((short) ECSJournal.type(change));
+                    removed++;
+                }
+            }
+            buffer.putShort(removedPosition, (short) removed);
+        }
+        return buffer;
+    }
+
+    /**
+     * @return the position in the change journal
+     */
+    long journalSequence() {
+        return journal.sequence();
+    }
+
+    /**
+     * @return the sorted journal entries after the position or null if they
+     * are no longer retained
+     */
+    long[] changes(long sequence) {
+        return journal.after(sequence);
+    }
+
+    boolean replicated() {
+        return !codecs.isEmpty();
+    }
+
+    /**
+     * @return an upper bound (exclusive) of all entity ids
+     */
+    int entityIdBound() {
+        return eIdSeq.get();
+    }
+
+    /**
+     * Encodes the replicated components of the entities in the id range as
+     * spawn records.
+     *
+     * @return the encoded page or null if the range holds no entities
+     */
+    byte[] encodePage(int fromEntityId, int toEntityId) {
+        ByteBuffer buffer = null;
+        int records = 0;
+        for (int entityId = fromEntityId; entityId < toEntityId; entityId++) {
+            if (eId2data.containsKey(entityId)) {
+                if (buffer == null) {
+                    buffer = ByteBuffer.allocate(256);
+                    buffer.putInt(0);
+                }
+                buffer = encodeEntity(buffer, entityId, null);
+                records++;
+            }
+        }
+        if (buffer == null) {
+            return null;
+        }
+        buffer.putInt(0, records);
+        return Arrays.copyOf(buffer.array(), buffer.position());
+    }
+
+    /**
+     * Restores the entities in the id range to a page of
+     * {@link #encodePage(int, int)}: entities missing in the page are
+     * removed, the others get the replicated components of the page.
+     */
+    void restorePage(int fromEntityId, int toEntityId, byte[] page) {
+        int next = fromEntityId;
+        if (page != null) {
+            final ByteBuffer buffer = ByteBuffer.wrap(page);
+            for (int r = 0, records = buffer.getInt(); r < records; r++) {
+                final int entityId = buffer.getInt();
+                buffer.get();
+                final int count = buffer.getShort() & 0xFFFF;
+                final List<ECSComponent> components = new ArrayList<>(count);
+                for (int c = 0; c < count; c++) {
+                    components.add(codecs.decode(buffer));
+                }
+                for (; next < entityId; next++) {
+                    removeEntity(next);
+                }
+                restoreEntity(entityId, components);
+                next = entityId + 1;
+            }
+        }
+        for (; next < toEntityId; next++) {
+            removeEntity(next);
+        }
+    }
+
+    private void restoreEntity(int entityId, List<ECSComponent> components) {
+        final List<ECSComponent> current = eId2data.get(entityId);
+        if (current == null) {
+            eIdSeq.accumulateAndGet(entityId + 1, Math::max);
+            insertEntity(entityId, components, ECSJournal.RESPAWN);
+            return;
+        }
+        // Components without codec are not part of the page and stay untouched
+        for (int i = current.size() - 1; i >= 0; i--) {
+            final int type = codecs.type(current.get(i).getClass());
+            if (type >= 0 && !containsType(components, type)) {
+                removeComponent(entityId, current.get(i).getClass());
+            }
+        }
+        for (ECSComponent component : components) {
+            replaceComponent(entityId, component);
+        }
+    }
+
+    private boolean containsType(List<ECSComponent> components, int type) {
+        for (ECSComponent component : components) {
+            if (codecs.type(component.getClass()) == type) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean hasType(int entityId, int type) {
+        return containsType(eId2data.get(entityId), type);
+    }
+
+    /**
+     * Creates a ring buffer of the recent states of this world, see
+     * {@link ECSRollback}. The states consist of the components with a
+     * registered codec.
+     *
+     * @param frames the number of buffered frames
+     * @return the rollback buffer
+     */
+    public ECSRollback rollback(int frames) {
+        return new ECSRollback(this, frames);
+    }
+
+    /**
+     * Applies a delta of {@link #delta(long)} or a {@link #snapshot()} of
+     * another world. Spawned entities keep their entity id, modified
+     * components replace the components of the same type. Must not be called
+     * during {@link #update()}.
+     *
+     * @param delta the encoded delta
+     * @return the tick of the sending world the delta was extracted at
+     */
+    public long applyDelta(byte[] delta) {
+        final ByteBuffer buffer = ByteBuffer.wrap(delta);
+        ((Buffer) buffer).position(8);
+        final long deltaTick = buffer.getLong();
+        for (int r = 0, records = buffer.getInt(); r < records; r++) {
+            final int entityId = buffer.getInt();
+            final int op = buffer.get();
+            if (op == ECSJournal.DESTROY) {
+                removeEntity(entityId);
+                continue;
+            }
+            final int count = buffer.getShort() & 0xFFFF;
+            final List<ECSComponent> components = new ArrayList<>(count);
+            for (int c = 0; c < count; c++) {
+                components.add(codecs.decode(buffer));
+            }
+            if (op == ECSJournal.SPAWN) {
+                removeEntity(entityId);
+                eIdSeq.accumulateAndGet(entityId + 1, Math::max);
+                insertEntity(entityId, components);
+            } else {
+                for (ECSComponent component : components) {
+                    replaceComponent(entityId, component);
+                }
+                for (int c = 0, removed = buffer.getShort() & 0xFFFF; c < removed; c++) {
+                    removeComponent(entityId, codecs.component(buffer.getShort() & 0xFFFF));
+                }
+            }
+        }
+        return deltaTick;
+    }
+
+    private void replaceComponent(int entityId, ECSComponent component) {
+        final List<ECSComponent> components = eId2data.get(entityId);
+        if (components == null) {
+            return;
+        }
+        for (int i = 0, n = components.size(); i < n; i++) {
+            final ECSComponent previous = components.get(i);
+            if (previous.getClass() == component.getClass()) {
+                components.set(i, component);
+                if (previous instanceof ECSColumnComponent && ((ECSColumnComponent) previous).bound()) {
+                    final ECSColumnComponent columnar = (ECSColumnComponent) previous;
+                    final ECSColumns columns = columnar.columns();
+                    final int row = columnar.row();
+                    columnar.unbind();
+                    columns.bind((ECSColumnComponent) component, row);
+                }
+                final ECSSparseSet set = sparseSet(component.getClass());
+                if (set != null) {
+                    set.add(entityId, component);
+                }
+                if (previous instanceof ECSBufferedComponent) {
+                    eId2buffers.get(entityId).removeIf(buffered -> buffered == previous);
+                }
+                addBuffer(entityId, component);
+                journalChange(entityId, component.getClass());
+                return;
+            }
+        }
+        addComponent(entityId, component);
+    }
+
+    /**
+     * Takes a snapshot of the runtime statistics, including the estimated
+     * memory footprint per archetype, table and component type. The cost
+     * depends on the number of archetypes and tables, not on the number of
+     * entities.
+     *
+     * @return the statistics of this world
+     */
+    public ECSStatistics statistics() {
+        final Map<ECSArchetype, Double> fragmentation = new HashMap<>();
+        final Map<ECSArchetype, ECSStatistics.Footprint> archetypes = new HashMap<>();
+        for (Entry<ECSArchetype, ECSEntityList> entry : archetype2eids.entrySet()) {
+            final ECSEntityList entityIds = entry.getValue();
+            fragmentation.put(entry.getKey(), entityIds.fragmentation());
+            archetypes.put(entry.getKey(), new ECSStatistics.Footprint(entityIds.size(), entityIds.slots(), entityIds.capacity(), ECSMemory.entityList(entityIds.capacity())));
+        }
+
+        final Map<Integer, Class<? extends ECSComponent>> cid2class = ECSArchetype.Builder.componentClasses();
+        final Map<Set<Class<? extends ECSComponent>>, ECSStatistics.Footprint> tables = new HashMap<>();
+        final Map<Class<? extends ECSComponent>, long[]> class2usage = new HashMap<>();
+        for (ECSComposition composition : compositions.values()) {
+            final ECSEntityList entityIds = composition.entities();
+            final int entities = entityIds.size();
+            final Set<Class<? extends ECSComponent>> classes = new HashSet<>();
+            long bytes = ECSMemory.entityList(entityIds.capacity()) + entities * ECSMemory.componentList(composition.cids().cardinality());
+            for (int cid = composition.cids().nextSetBit(0); cid >= 0; cid = composition.cids().nextSetBit(cid + 1)) {
+                final Class<? extends ECSComponent> component = cid2class.get(cid);
+                final int instances = ECSBufferedComponent.class.isAssignableFrom(component) ? 2 * entities : entities;
+                final ECSColumns columns = composition.columns(component);
+                final long componentBytes = instances * ECSMemory.shallowSize(component) + (columns == null ? 0 : columns.bytes());
+                final long[] usage = class2usage.computeIfAbsent(component, e -> new long[3]);
+                usage[0] += entities;
+                usage[1] += instances;
+                usage[2] += componentBytes;
+                classes.add(component);
+                bytes += componentBytes;
+            }
+            tables.put(Collections.unmodifiableSet(classes), new ECSStatistics.Footprint(entities, entityIds.slots(), entityIds.capacity(), bytes));
+        }
+        long sparseBytes = 0;
+        for (Entry<Integer, ECSSparseSet> entry : cid2sparse.entrySet()) {
+            final Class<? extends ECSComponent> component = cid2class.get(entry.getKey());
+            final int entities = entry.getValue().size();
+            final int instances = ECSBufferedComponent.class.isAssignableFrom(component) ? 2 * entities : entities;
+            final long bytes = instances * ECSMemory.shallowSize(component) + entry.getValue().bytes();
+            final long[] usage = class2usage.computeIfAbsent(component, e -> new long[3]);
+            usage[0] += entities;
+            usage[1] += instances;
+            usage[2] += bytes;
+            sparseBytes += bytes;
+        }
+        final Map<Class<? extends ECSComponent>, ECSStatistics.Footprint> components = new HashMap<>();
+        class2usage.forEach((component, usage) -> components.put(component, new ECSStatistics.Footprint((int) usage[0], (int) usage[1], (int) usage[1], usage[2])));
+
+        // eId2data and eId2composition share the same keys and peak size
+        final long idMapBytes = 2 * ECSMemory.idMap(eId2data.size(), eIdPeak) + ECSMemory.idMap(eId2buffers.size(), eId2buffers.size());
+
+        return new ECSStatistics(eId2data.size(), sId2data.size(), fragmentation, archetypes, tables, components, idMapBytes, sparseBytes);
     }
 
 }
@@ -0,0 +1,158 @@
+/*
+ * Copyright (C) 2019 nickscha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.github.nickscha.ecs4j;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * ECS4J Entity Map
+ * <p>
+ * Map keyed by entity id whose table can be shrunk incrementally. A
+ * {@link HashMap} never shrinks its table, so once most entities are gone the
+ * entries are moved into a new, smaller table. The move runs in steps over
+ * the entity id range (see {@link #migrate(int)}); until it is finished the
+ * entries not moved yet are looked up in the previous table.
+ * </p>
+ *
+ * @param <V> the value type
+ * @author nickscha
+ * @since 0.0.1
+ */
+final class ECSEntityMap<V> extends AbstractMap<Integer, V> {
+
+    private HashMap<Integer, V> current = new HashMap<>();
+    private HashMap<Integer, V> previous;
+    private int cursor;
+    private int limit;
+
+    @Override
+    public V get(Object key) {
+        final V value = current.get(key);
+        return value != null || previous == null ? value : previous.get(key);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return current.containsKey(key) || (previous != null && previous.containsKey(key));
+    }
+
+    @Override
+    public V put(Integer key, V value) {
+        V old = current.put(key, value);
+        if (previous != null) {
+            final V moved = previous.remove(key);
+            old = old != null ? old : moved;
+        }
+        limit = Math.max(limit, key + 1);
+        return old;
+    }
+
+    @Override
+    public V remove(Object key) {
+        final V old = current.remove(key);
+        return old != null || previous == null ? old : previous.remove(key);
+    }
+
+    @Override
+    public int size() {
+        return current.size() + (previous != null ? previous.size() : 0);
+    }
+
+    @Override
+    public void clear() {
+        current.clear();
+        previous = null;
+    }
+
+    @Override
+    public Set<Entry<Integer, V>> entrySet() {
+        return new AbstractSet<Entry<Integer, V>>() {
+
+            @Override
+            public Iterator<Entry<Integer, V>> iterator() {
+                final Iterator<Entry<Integer, V>> first = current.entrySet().iterator();
+                final Iterator<Entry<Integer, V>> second = previous != null ? previous.entrySet().iterator() : null;
+                return new Iterator<Entry<Integer, V>>() {
+
+                    @Override
+                    public boolean hasNext() {
+                        return first.hasNext() || (second != null && second.hasNext());
+                    }
+
+                    @Override
+                    public Entry<Integer, V> next() {
+                        return first.hasNext() || second == null ? first.next() : second.next();
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return ECSEntityMap.this.size();
+            }
+        };
+    }
+
+    /**
+     * @return true if the entries are being moved into a new table
+     */
+    boolean shrinking() {
+        return previous != null;
+    }
+
+    /**
+     * Starts moving the entries into a new table sized for the current
+     * number of entries.
+     */
+    void shrink() {
+        if (previous == null) {
+            previous = current;
+            current = new HashMap<>(Math.max(16, (int) (previous.size() / 0.75f) + 1));
+            cursor = 0;
+        }
+    }
+
+    /**
+     * Moves the entries of the next {@code step} entity ids into the new
+     * table.
+     *
+     * @param step the number of entity ids to visit
+     * @return true once all entries are moved
+     */
+    boolean migrate(int step) {
+        if (previous == null) {
+            return true;
+        }
+        final int end = (int) Math.min(limit, (long) cursor + step);
+        for (; cursor < end && !previous.isEmpty(); cursor++) {
+            final V value = previous.remove(cursor);
+            if (value != null) {
+                current.put(cursor, value);
+            }
+        }
+        if (cursor < limit && !previous.isEmpty()) {
+            return false;
+        }
+        previous = null;
+        return true;
+    }
+
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2019 nickscha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.github.nickscha.ecs4j;
+
+import java.util.List;
+
+/**
+ * ECS4J Event System Specification
+ * <p>
+ * A system which is invoked once per event of an {@link ECSChannel} instead
+ * of once per entity. It has to run in a later {@link #phase()} than the
+ * producers of the channel. Event systems look up the components of the
+ * entities referenced by an event with {@link ECSEntityManager#components(int)}
+ * and iterate no entities, so they have no archetype and no membership.
+ * Replicated components modified by an event system are not journaled
+ * automatically, see {@link ECSEntityManager#markChanged(int, Class)}.
+ * </p>
+ * <b>Example:</b>
+ *
+ * <pre>
+ *     &#64;Override
+ *     public void update(Damage event) {
+ *         Health health = (Health) em.components(event.target).get(0);
+ *         health.value -= event.amount;
+ *     }
+ *
+ *     &#64;Override
+ *     public int phase() {
+ *         return 1;
+ *     }
+ * </pre>
+ *
+ * @param <E> the event type
+ * @author nickscha
+ * @since 0.0.1
+ */
+public interface ECSEventSystem<E> extends ECSSystem {
+
+    /**
+     * @return the channel consumed by this system
+     */
+    ECSChannel<E> channel();
+
+    /**
+     * This method will be invoked from the {@link ECSEntityManager} for each
+     * event published to the channel in this tick.
+     *
+     * @param event the event, only valid during this tick
+     */
+    void update(E event);
+
+    /**
+     * Not invoked for event systems.
+     *
+     * @param components unused
+     */
+    @Override
+    default void update(List<ECSComponent> components) {
+    }
+
+    /**
+     * Event systems do not iterate entities, the archetype is ignored.
+     *
+     * @return null
+     */
+    @Override
+    default ECSArchetype archetype() {
+        return null;
+    }
+
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2019 nickscha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.github.nickscha.ecs4j;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * ECS4J Executors
+ * <p>
+ * Factory for the execution backends the {@link ECSEntityManager} can use to
+ * run its systems during {@link ECSEntityManager#update()}.
+ * </p>
+ * <b>Example:</b>
+ *
+ * <pre>
+ * ECSEntityManager em = ECSEntityManager.create()
+ *         .executor(ECSExecutors.forkJoin(4));
+ * </pre>
+ *
+ * <p>
+ * Backends returned as {@link ExecutorService} are owned by the caller and
+ * have to be shut down once the world is no longer used.
+ * </p>
+ *
+ * @author nickscha
+ * @since 0.0.1
+ */
+public final class ECSExecutors {
+
+    private static final Executor CALLER_THREAD = Runnable::run;
+
+    private ECSExecutors() {
+    }
+
+    /**
+     * The shared {@link ForkJoinPool#commonPool()} (default backend).
+     *
+     * @return the common fork/join pool
+     */
+    public static Executor commonPool() {
+        return ForkJoinPool.commonPool();
+    }
+
+    /**
+     * A dedicated fork/join pool which is not shared with parallel streams.
+     *
+     * @param parallelism the number of worker threads
+     * @return a new fork/join pool with named daemon threads
+     */
+    public static ExecutorService forkJoin(int parallelism) {
+        final AtomicInteger seq = new AtomicInteger(0);
+        return new ForkJoinPool(parallelism, pool -> {
+            final ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("ecs4j-fj-" + seq.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }, null, false);
+    }
+
+    /**
+     * A fixed pool of platform threads.
+     *
+     * @param threads the number of worker threads
+     * @return a new fixed thread pool with named daemon threads
+     */
+    public static ExecutorService fixed(int threads) {
+        final AtomicInteger seq = new AtomicInteger(0);
+        final ThreadFactory factory = runnable -> {
+            final Thread thread = new Thread(runnable, "ecs4j-worker-" + seq.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        };
+        return Executors.newFixedThreadPool(threads, factory);
+    }
+
+    /**
+     * Runs every system on the thread calling
+     * {@link ECSEntityManager#update()}, one after another in the order the
+     * systems have been created. Results do not depend on thread scheduling.
+     *
+     * @return the caller thread executor
+     */
+    public static Executor callerThread() {
+        return CALLER_THREAD;
+    }
+
+    /**
+     * One virtual thread per system, intended for systems which block on I/O.
+     * Requires a Java runtime with virtual thread support (Java 21 or later).
+     *
+     * @return a new virtual thread per task executor
+     * @throws UnsupportedOperationException if the runtime does not support
+     * virtual threads
+     */
+    public static ExecutorService virtualThreads() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException ex) {
+            throw new UnsupportedOperationException("Virtual threads are not supported by this Java runtime", ex);
+        }
+    }
+
+}
@@ -0,0 +1,464 @@
+/*
+ * Copyright (C) 2019 nickscha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.github.nickscha.ecs4j;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * ECS4J Import
+ * <p>
+ * Streams entities from a file into an {@link ECSEntityManager}. The file is
+ * read in chunks, each record is decoded into one entity by the registered
+ * {@link ECSComponentCodec}s (one component per codec, in registration order)
+ * and the entities are created in batches. Memory stays bounded by the chunk
+ * and batch sizes regardless of the file size.
+ * </p>
+ * <b>Example:</b>
+ *
+ * <pre>
+ * ECSImport.builder()
+ *         .csv(',', true)
+ *         .codec(buffer -&gt; new Position(Float.parseFloat(ECSComponentCodec.text(buffer)), 0))
+ *         .codec(buffer -&gt; new Velocity(Float.parseFloat(ECSComponentCodec.text(buffer)), 0))
+ *         .parallelism(4)
+ *         .build()
+ *         .run(channel, em);
+ * </pre>
+ *
+ * <p>
+ * With a parallelism above one the file is split into segments at record
+ * boundaries which are decoded concurrently, so the codecs must be thread
+ * safe. Entities are always created on the thread calling
+ * {@link #run(FileChannel, ECSEntityManager)}, which must not run
+ * concurrently with {@link ECSEntityManager#update()}.
+ * </p>
+ *
+ * @author nickscha
+ * @since 0.0.1
+ */
+public final class ECSImport {
+
+    private static final List<List<ECSComponent>> END = Collections.emptyList();
+
+    private final List<ECSComponentCodec<?>> codecs;
+    private final int recordSize;
+    private final byte delimiter;
+    private final boolean header;
+    private final int chunkSize;
+    private final int batchSize;
+    private final int parallelism;
+    private final Progress progress;
+
+    private ECSImport(Builder builder) {
+        this.codecs = new ArrayList<>(builder.codecs);
+        this.recordSize = builder.recordSize;
+        this.delimiter = builder.delimiter;
+        this.header = builder.header;
+        this.chunkSize = recordSize > 0 ? Math.max(1, builder.chunkSize / recordSize) * recordSize : builder.chunkSize;
+        this.batchSize = builder.batchSize;
+        this.parallelism = builder.parallelism;
+        this.progress = builder.progress;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Imports all records of the channel.
+     *
+     * @param channel the channel to read from, read with absolute positions
+     * @param em the entity manager to create the entities in
+     * @return the number of created entities
+     * @throws IOException if the channel cannot be read or a record is
+     * malformed
+     */
+    public long run(FileChannel channel, ECSEntityManager em) throws IOException {
+        final long size = channel.size();
+        final long[] bounds = segments(channel, size);
+        final AtomicLong bytes = new AtomicLong(0);
+        final long[] entities = new long[1];
+        final Sink insert = batch -> {
+            em.createEntities(batch);
+            entities[0] += batch.size();
+            if (progress != null) {
+                progress.update(bytes.get(), size, entities[0]);
+            }
+        };
+
+        if (bounds.length == 2) {
+            try {
+                decode(channel, bounds[0], bounds[1], header, insert, bytes);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            }
+            return entities[0];
+        }
+
+        // Workers decode the segments, the caller creates the entities
+        final int segments = bounds.length - 1;
+        final BlockingQueue<List<List<ECSComponent>>> queue = new ArrayBlockingQueue<>(2 * segments);
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        final ExecutorService workers = ECSExecutors.fixed(segments);
+        try {
+            for (int i = 0; i < segments; i++) {
+                final int segment = i;
+                workers.execute(() -> {
+                    try {
+                        decode(channel, bounds[segment], bounds[segment + 1], header && segment == 0, queue::put, bytes);
+                    } catch (Throwable ex) {
+                        failure.compareAndSet(null, ex);
+                    } finally {
+                        try {
+                            queue.put(END);
+                        } catch (InterruptedException ex) {
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+                });
+            }
+            int running = segments;
+            while (running > 0) {
+                final List<List<ECSComponent>> batch = queue.take();
+                if (batch == END) {
+                    running--;
+                } else if (failure.get() == null) {
+                    insert.accept(batch);
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } finally {
+            workers.shutdownNow();
+        }
+
+        final Throwable ex = failure.get();
+        if (ex instanceof IOException) {
+            throw (IOException) ex;
+        } else if (ex instanceof RuntimeException) {
+            throw (RuntimeException) ex;
+        } else if (ex != null) {
+            throw new IOException(ex);
+        }
+        return entities[0];
+    }
+
+    /**
+     * Splits the file into segments starting at record boundaries.
+     */
+    private long[] segments(FileChannel channel, long size) throws IOException {
+        final int segments = (int) Math.max(1, Math.min(parallelism, size / chunkSize));
+        final long[] bounds = new long[segments + 1];
+        bounds[segments] = size;
+        for (int i = 1; i < segments; i++) {
+            if (recordSize > 0) {
+                bounds[i] = (size / recordSize * i / segments) * recordSize;
+            } else {
+                bounds[i] = Math.max(bounds[i - 1], nextLine(channel, size * i / segments, size));
+            }
+        }
+        return bounds;
+    }
+
+    private static long nextLine(FileChannel channel, long position, long size) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(4096);
+        long offset = position - 1;
+        while (offset < size) {
+            ((Buffer) buffer).clear();
+            final int read = channel.read(buffer, offset);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                if (buffer.get(i) == '\n') {
+                    return offset + i + 1;
+                }
+            }
+            offset += read;
+        }
+        return size;
+    }
+
+    private void decode(FileChannel channel, long start, long end, boolean skipHeader, Sink sink, AtomicLong bytes) throws IOException, InterruptedException {
+        ByteBuffer chunk = ByteBuffer.allocate((int) Math.min(chunkSize, Math.max(1, end - start)));
+        final Records records = new Records(skipHeader, bytes);
+        long position = start;
+        while (true) {
+            final int toRead = (int) Math.min(chunk.remaining(), end - position);
+            ((Buffer) chunk).limit(chunk.position() + toRead);
+            while (chunk.hasRemaining()) {
+                final int read = channel.read(chunk, position);
+                if (read < 0) {
+                    break;
+                }
+                position += read;
+            }
+            final boolean eof = position >= end || chunk.hasRemaining();
+            ((Buffer) chunk).flip();
+
+            final int consumed = records.decode(chunk, position - chunk.limit(), eof, sink);
+            if (eof) {
+                break;
+            }
+            if (consumed == 0 && chunk.limit() == chunk.capacity()) {
+                // a single record is larger than the chunk
+                final ByteBuffer larger = ByteBuffer.allocate(chunk.capacity() * 2);
+                larger.put(chunk);
+                chunk = larger;
+            } else {
+                chunk.compact();
+            }
+        }
+        records.flush(sink);
+    }
+
+    /**
+     * Decodes the complete records of a chunk into batches.
+     */
+    private final class Records {
+
+        private final AtomicLong bytes;
+        private boolean skipHeader;
+        private List<List<ECSComponent>> batch = new ArrayList<>(batchSize);
+        private int pending;
+
+        private Records(boolean skipHeader, AtomicLong bytes) {
+            this.skipHeader = skipHeader;
+            this.bytes = bytes;
+        }
+
+        /**
+         * @return the number of consumed bytes, the chunk is positioned after
+         * the last complete record
+         */
+        private int decode(ByteBuffer chunk, long offset, boolean eof, Sink sink) throws IOException, InterruptedException {
+            final ByteBuffer view = chunk.duplicate();
+            final int start = chunk.position();
+            int index = start;
+            final int limit = chunk.limit();
+            if (recordSize > 0) {
+                while (limit - index >= recordSize) {
+                    ((Buffer) view).clear();
+                    ((Buffer) view).position(index);
+                    ((Buffer) view).limit(index + recordSize);
+                    final List<ECSComponent> entity = new ArrayList<>(codecs.size());
+                    for (int i = 0, n = codecs.size(); i < n; i++) {
+                        entity.add(codecs.get(i).decode(view));
+                    }
+                    index += recordSize;
+                    pending += recordSize;
+                    add(entity, sink);
+                }
+                if (eof && index < limit) {
+                    throw new IOException("Truncated record at byte " + (offset + index));
+                }
+            } else {
+                while (index < limit) {
+                    int newline = index;
+                    while (newline < limit && chunk.get(newline) != '\n') {
+                        newline++;
+                    }
+                    if (newline == limit && !eof) {
+                        break;
+                    }
+                    final int next = Math.min(limit, newline + 1);
+                    pending += next - index;
+                    decodeLine(chunk, view, index, newline, offset, sink);
+                    index = next;
+                }
+            }
+            bytes.addAndGet(pending);
+            pending = 0;
+            ((Buffer) chunk).position(index);
+            return index - start;
+        }
+
+        private void decodeLine(ByteBuffer chunk, ByteBuffer view, int from, int to, long offset, Sink sink) throws IOException, InterruptedException {
+            int end = to;
+            if (end > from && chunk.get(end - 1) == '\r') {
+                end--;
+            }
+            if (end == from) {
+                return;
+            }
+            if (skipHeader) {
+                skipHeader = false;
+                return;
+            }
+            final List<ECSComponent> entity = new ArrayList<>(codecs.size());
+            int field = from;
+            for (int i = 0, n = codecs.size(); i < n; i++) {
+                if (field > end) {
+                    throw new IOException("Expected " + n + " fields in line at byte " + (offset + from));
+                }
+                int next = field;
+                while (next < end && chunk.get(next) != delimiter) {
+                    next++;
+                }
+                ((Buffer) view).clear();
+                ((Buffer) view).position(field);
+                ((Buffer) view).limit(next);
+                entity.add(codecs.get(i).decode(view));
+                field = next + 1;
+            }
+            add(entity, sink);
+        }
+
+        private void add(List<ECSComponent> entity, Sink sink) throws InterruptedException {
+            batch.add(entity);
+            if (batch.size() == batchSize) {
+                // count the bytes of the batch before it is reported
+                bytes.addAndGet(pending);
+                pending = 0;
+                sink.accept(batch);
+                batch = new ArrayList<>(batchSize);
+            }
+        }
+
+        private void flush(Sink sink) throws InterruptedException {
+            if (!batch.isEmpty()) {
+                sink.accept(batch);
+                batch = new ArrayList<>(batchSize);
+            }
+        }
+    }
+
+    @FunctionalInterface
+    private interface Sink {
+
+        void accept(List<List<ECSComponent>> batch) throws InterruptedException;
+    }
+
+    /**
+     * Receives the progress of an import after each created batch.
+     */
+    @FunctionalInterface
+    public interface Progress {
+
+        /**
+         * @param bytes the number of decoded bytes
+         * @param totalBytes the size of the file
+         * @param entities the number of created entities
+         */
+        void update(long bytes, long totalBytes, long entities);
+    }
+
+    public static class Builder {
+
+        private final List<ECSComponentCodec<?>> codecs = new ArrayList<>(4);
+        private int recordSize;
+        private byte delimiter = ',';
+        private boolean header;
+        private int chunkSize = 1 << 20;
+        private int batchSize = 4096;
+        private int parallelism = 1;
+        private Progress progress;
+
+        /**
+         * Fixed size binary records, each codec consumes its bytes of the
+         * record in registration order.
+         *
+         * @param recordSize the size of one record in bytes
+         * @return this builder
+         */
+        public Builder binary(int recordSize) {
+            if (recordSize <= 0) {
+                throw new IllegalArgumentException("recordSize must be positive");
+            }
+            this.recordSize = recordSize;
+            return this;
+        }
+
+        /**
+         * Line based text records, the n-th field is decoded by the n-th
+         * codec. This is the default format.
+         *
+         * @param delimiter the field delimiter (ASCII)
+         * @param header true if the first line is a header to skip
+         * @return this builder
+         */
+        public Builder csv(char delimiter, boolean header) {
+            this.recordSize = 0;
+            this.delimiter = (byte) delimiter;
+            this.header = header;
+            return this;
+        }
+
+        public Builder codec(ECSComponentCodec<?>... codecs) {
+            this.codecs.addAll(Arrays.asList(codecs));
+            return this;
+        }
+
+        /**
+         * @param chunkSize the number of bytes read at once per segment
+         * @return this builder
+         */
+        public Builder chunkSize(int chunkSize) {
+            this.chunkSize = chunkSize;
+            return this;
+        }
+
+        /**
+         * @param batchSize the number of entities created at once
+         * @return this builder
+         */
+        public Builder batchSize(int batchSize) {
+            this.batchSize = batchSize;
+            return this;
+        }
+
+        /**
+         * @param parallelism the number of segments decoded concurrently
+         * @return this builder
+         */
+        public Builder parallelism(int parallelism) {
+            this.parallelism = parallelism;
+            return this;
+        }
+
+        public Builder progress(Progress progress) {
+            this.progress = progress;
+            return this;
+        }
+
+        public ECSImport build() {
+            if (codecs.isEmpty()) {
+                throw new IllegalStateException("At least one codec is required");
+            }
+            if (chunkSize <= 0 || batchSize <= 0 || parallelism <= 0) {
+                throw new IllegalStateException("chunkSize, batchSize and parallelism must be positive");
+            }
+            return new ECSImport(this);
+        }
+
+    }
+
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2019 nickscha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.github.nickscha.ecs4j;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Map;
+import java.util.function.IntConsumer;
+
+/**
+ * ECS4J Join
+ * <p>
+ * Matches an archetype which constrains sparse components (see
+ * {@link ECSEntityManager#sparse(Class)}). The archetype is split into a dense
+ * part, which is matched against the compositions like any other archetype,
+ * and the sparse constraints, which are checked per entity. Iteration is
+ * driven by whichever is smaller: the entities of the dense part or the
+ * smallest sparse set all entities have to be contained in.
+ * </p>
+ *
+ * @author nickscha
+ * @since 0.0.1
+ */
+final class ECSJoin {
+
+    private final ECSArchetype dense;
+    private final ECSSparseSet[] all;
+    private final ECSSparseSet[] any;
+    private final ECSSparseSet[] none;
+    // the dense any components, if the any constraint mixes dense and sparse components
+    private final int[] denseAny;
+
+    private ECSJoin(ECSArchetype dense, ECSSparseSet[] all, ECSSparseSet[] any, ECSSparseSet[] none, int[] denseAny) {
+        this.dense = dense;
+        this.all = all;
+        this.any = any;
+        this.none = none;
+        this.denseAny = denseAny;
+    }
+
+    /**
+     * @return the join of the archetype or null if the archetype does not
+     * constrain sparse components
+     */
+    static ECSJoin of(ECSArchetype archetype, BitSet sparse, Map<Integer, ECSSparseSet> cid2sparse) {
+        final boolean anySparse = Arrays.stream(archetype.any()).anyMatch(sparse::get);
+        if (!anySparse && Arrays.stream(archetype.all()).noneMatch(sparse::get) && Arrays.stream(archetype.none()).noneMatch(sparse::get)) {
+            return null;
+        }
+        return new ECSJoin(archetype.without(sparse),
+                sets(archetype.all(), sparse, cid2sparse),
+                anySparse ? sets(archetype.any(), sparse, cid2sparse) : new ECSSparseSet[0],
+                sets(archetype.none(), sparse, cid2sparse),
+                anySparse ? Arrays.stream(archetype.any()).filter(cid -> !sparse.get(cid)).toArray() : new int[0]);
+    }
+
+    private static ECSSparseSet[] sets(int[] cids, BitSet sparse, Map<Integer, ECSSparseSet> cid2sparse) {
+        return Arrays.stream(cids).filter(sparse::get).mapToObj(cid2sparse::get).toArray(ECSSparseSet[]::new);
+    }
+
+    /**
+     * @return the part of the archetype matched against the compositions
+     */
+    ECSArchetype dense() {
+        return dense;
+    }
+
+    /**
+     * Visits the entities of the dense part which satisfy the sparse
+     * constraints.
+     *
+     * @param entities the entities matching the dense part
+     * @param eId2composition the composition of each entity
+     * @param action the action per entity id
+     */
+    void forEach(ECSEntityList entities, Map<Integer, ECSComposition> eId2composition, IntConsumer action) {
+        ECSSparseSet driver = null;
+        for (ECSSparseSet set : all) {
+            if (driver == null || set.size() < driver.size()) {
+                driver = set;
+            }
+        }
+        if (driver != null && driver.size() < entities.size()) {
+            for (int i = 0, n = driver.size(); i < n; i++) {
+                final int entityId = driver.entityId(i);
+                final ECSComposition composition = eId2composition.get(entityId);
+                if (composition.archetypes().contains(entities) && accept(entityId, composition)) {
+                    action.accept(entityId);
+                }
+            }
+            return;
+        }
+        for (int i = 0, slots = entities.slots(); i < slots; i++) {
+            final int entityId = entities.get(i);
+            if (entityId != ECSEntityList.HOLE && accept(entityId, denseAny.length > 0 ? eId2composition.get(entityId) : null)) {
+                action.accept(entityId);
+            }
+        }
+    }
+
+    /**
+     * @return true if the entity satisfies the sparse constraints
+     */
+    boolean accept(int entityId, Map<Integer, ECSComposition> eId2composition) {
+        return accept(entityId, denseAny.length > 0 ? eId2composition.get(entityId) : null);
+    }
+
+    private boolean accept(int entityId, ECSComposition composition) {
+        for (ECSSparseSet set : all) {
+            if (!set.contains(entityId)) {
+                return false;
+            }
+        }
+        for (ECSSparseSet set : none) {
+            if (set.contains(entityId)) {
+                return false;
+            }
+        }
+        if (any.length == 0) {
+            return true;
+        }
+        for (ECSSparseSet set : any) {
+            if (set.contains(entityId)) {
+                return true;
+            }
+        }
+        for (int cid : denseAny) {
+            if (composition.cids().get(cid)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+}
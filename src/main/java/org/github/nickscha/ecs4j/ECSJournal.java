@@ -0,0 +1,306 @@
+/*
+ * Copyright (C) 2019 nickscha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.github.nickscha.ecs4j;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * ECS4J Journal
+ * <p>
+ * Append only log of the changes (spawned and destroyed entities, modified
+ * components) per tick, used to extract deltas for replication. Entries are
+ * packed into a long (entity id, kind, component type) so the changes since a
+ * tick can be sorted and deduplicated without boxing. The writes of a system
+ * are recorded as a single marker per membership list and component type,
+ * covering the slots the system visited in that tick. A marker is expanded to
+ * the entities of these slots when the changes are read, or before the list
+ * is compacted (see {@link #freeze(ECSEntityList)}), so entities joining the
+ * list later are not part of it.
+ * </p>
+ *
+ * @author nickscha
+ * @since 0.0.1
+ */
+final class ECSJournal {
+
+    static final int SPAWN = 0;
+    static final int DESTROY = 1;
+    static final int CHANGE = 2;
+    static final int REMOVE = 3;
+    // an entity id which existed before is spawned again, see ECSRollback
+    static final int RESPAWN = 4;
+    // a change of the component type for all entities of a list
+    private static final int WRITES = 5;
+
+    private long[] ticks = new long[64];
+    private long[] keys = new long[64];
+    // the marker of each WRITES entry
+    private Marker[] markers = new Marker[64];
+    // the last tick of a WRITES entry per list and component type
+    private final Map<ECSEntityList, long[]> marked = new IdentityHashMap<>();
+    private long retainedFrom = Long.MIN_VALUE;
+    private int head;
+    private int size;
+    // number of entries dropped by trim
+    private long trimmed;
+
+    synchronized void record(long tick, int kind, int entityId, int type) {
+        ensureCapacity(1);
+        ticks[size] = tick;
+        keys[size] = key(kind, entityId, type);
+        size++;
+    }
+
+    /**
+     * Records a change of the component type for the entities in the slots
+     * {@code from <= slot < to} of the list. The entities are resolved when
+     * the changes are read, see {@link #leave(long, ECSEntityList, int)} for
+     * entities leaving the list in between.
+     */
+    synchronized void record(long tick, ECSEntityList entityIds, int from, int to, int type) {
+        if (from >= to) {
+            return;
+        }
+        ensureCapacity(1);
+        ticks[size] = tick;
+        keys[size] = key(WRITES, 0, type);
+        markers[size] = new Marker(entityIds, from, to);
+        size++;
+        long[] types = marked.get(entityIds);
+        if (types == null || types.length <= type) {
+            types = types == null ? new long[type + 1] : Arrays.copyOf(types, type + 1);
+            marked.put(entityIds, types);
+        }
+        // stored with an offset of one, 0 marks a type which was not written
+        types[type] = tick + 1;
+    }
+
+    /**
+     * Records the changes of the retained markers of the list for an entity
+     * which leaves the list, so they are not lost when the markers are
+     * expanded later.
+     */
+    synchronized void leave(long tick, ECSEntityList entityIds, int entityId) {
+        final long[] types = marked.get(entityIds);
+        if (types == null) {
+            return;
+        }
+        for (int type = 0; type < types.length; type++) {
+            if (types[type] != 0 && types[type] - 1 >= retainedFrom) {
+                record(tick, CHANGE, entityId, type);
+            }
+        }
+    }
+
+    /**
+     * Resolves the entities of the markers of the list, which has to be called
+     * before the slots of the list change.
+     */
+    synchronized void freeze(ECSEntityList entityIds) {
+        if (!marked.containsKey(entityIds)) {
+            return;
+        }
+        for (int i = head; i < size; i++) {
+            if (markers[i] != null && markers[i].list == entityIds) {
+                markers[i].freeze();
+            }
+        }
+    }
+
+    /**
+     * Drops all entries recorded before the tick.
+     */
+    synchronized void trim(long tick) {
+        while (head < size && ticks[head] < tick) {
+            markers[head] = null;
+            head++;
+            trimmed++;
+        }
+        if (head == size) {
+            head = 0;
+            size = 0;
+        }
+        retainedFrom = tick;
+        for (Iterator<long[]> it = marked.values().iterator(); it.hasNext();) {
+            boolean retained = false;
+            for (long last : it.next()) {
+                retained |= last != 0 && last - 1 >= tick;
+            }
+            if (!retained) {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * @return the sorted and deduplicated entries recorded at or after the
+     * tick
+     */
+    synchronized long[] since(long tick) {
+        int from = Arrays.binarySearch(ticks, head, size, tick);
+        if (from < 0) {
+            from = -from - 1;
+        }
+        // binary search does not return the first of equal ticks
+        while (from > head && ticks[from - 1] == tick) {
+            from--;
+        }
+        return sorted(from);
+    }
+
+    /**
+     * @return the number of entries recorded so far
+     */
+    synchronized long sequence() {
+        return trimmed + size - head;
+    }
+
+    /**
+     * @return the sorted and deduplicated entries recorded after the
+     * sequence or null if some of them have been dropped
+     */
+    synchronized long[] after(long sequence) {
+        if (sequence < trimmed) {
+            return null;
+        }
+        return sorted(head + (int) (sequence - trimmed));
+    }
+
+    private long[] sorted(int from) {
+        long[] result = new long[size - from];
+        int count = 0;
+        for (int i = from; i < size; i++) {
+            if (kind(keys[i]) != WRITES) {
+                result[count++] = keys[i];
+                continue;
+            }
+            final Marker marker = markers[i];
+            final int type = type(keys[i]);
+            if (result.length - count < marker.length() + size - i) {
+                result = Arrays.copyOf(result, Math.max(result.length * 2, count + marker.length() + size - i));
+            }
+            if (marker.ids != null) {
+                for (int entityId : marker.ids) {
+                    result[count++] = key(CHANGE, entityId, type);
+                }
+                continue;
+            }
+            for (int slot = marker.from, to = Math.min(marker.to, marker.list.slots()); slot < to; slot++) {
+                final int entityId = marker.list.get(slot);
+                if (entityId != ECSEntityList.HOLE) {
+                    result[count++] = key(CHANGE, entityId, type);
+                }
+            }
+        }
+        result = count == result.length ? result : Arrays.copyOf(result, count);
+        Arrays.sort(result);
+        int n = 0;
+        for (int i = 0; i < result.length; i++) {
+            if (n == 0 || result[n - 1] != result[i]) {
+                result[n++] = result[i];
+            }
+        }
+        return n == result.length ? result : Arrays.copyOf(result, n);
+    }
+
+    synchronized int size() {
+        return size - head;
+    }
+
+    private void ensureCapacity(int additional) {
+        if (size + additional <= keys.length) {
+            return;
+        }
+        final int live = size - head;
+        if (head > 0 && live + additional <= keys.length / 2) {
+            System.arraycopy(ticks, head, ticks, 0, live);
+            System.arraycopy(keys, head, keys, 0, live);
+            System.arraycopy(markers, head, markers, 0, live);
+            Arrays.fill(markers, live, size, null);
+        } else {
+            final int capacity = Math.max(keys.length * 2, live + additional);
+            final long[] newTicks = new long[capacity];
+            final long[] newKeys = new long[capacity];
+            final Marker[] newMarkers = new Marker[capacity];
+            System.arraycopy(ticks, head, newTicks, 0, live);
+            System.arraycopy(keys, head, newKeys, 0, live);
+            System.arraycopy(markers, head, newMarkers, 0, live);
+            ticks = newTicks;
+            keys = newKeys;
+            markers = newMarkers;
+        }
+        head = 0;
+        size = live;
+    }
+
+    static long key(int kind, int entityId, int type) {
+        return (long) entityId << 32 | kind << 16 | type;
+    }
+
+    static int entityId(long key) {
+        return (int) (key >>> 32);
+    }
+
+    static int kind(long key) {
+        return (int) (key >>> 16) & 0xFFFF;
+    }
+
+    static int type(long key) {
+        return (int) key & 0xFFFF;
+    }
+
+    /**
+     * The visited slots of a list, or the entities of these slots once the
+     * marker is frozen.
+     */
+    private static final class Marker {
+
+        final ECSEntityList list;
+        final int from;
+        final int to;
+        int[] ids;
+
+        Marker(ECSEntityList list, int from, int to) {
+            this.list = list;
+            this.from = from;
+            this.to = to;
+        }
+
+        int length() {
+            return ids != null ? ids.length : to - from;
+        }
+
+        void freeze() {
+            if (ids != null) {
+                return;
+            }
+            final int end = Math.min(to, list.slots());
+            int[] entityIds = new int[Math.max(0, end - from)];
+            int count = 0;
+            for (int slot = from; slot < end; slot++) {
+                final int entityId = list.get(slot);
+                if (entityId != ECSEntityList.HOLE) {
+                    entityIds[count++] = entityId;
+                }
+            }
+            ids = count == entityIds.length ? entityIds : Arrays.copyOf(entityIds, count);
+        }
+    }
+
+}
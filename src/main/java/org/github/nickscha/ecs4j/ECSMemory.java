@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2019 nickscha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.github.nickscha.ecs4j;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * ECS4J Memory
+ * <p>
+ * Estimates of the heap footprint of the storage structures, assuming a 64 bit
+ * JVM with compressed object pointers (12 byte object header, 4 byte
+ * references, 8 byte alignment). The sizes of component classes are computed
+ * once per class from their declared fields.
+ * </p>
+ *
+ * @author nickscha
+ * @since 0.0.1
+ */
+final class ECSMemory {
+
+    private static final int HEADER = 12;
+    private static final int ARRAY_HEADER = 16;
+    private static final int REFERENCE = 4;
+    private static final int INTEGER = 16;
+    private static final int HASH_MAP = 48;
+    private static final int HASH_MAP_NODE = 32;
+
+    private static final Map<Class<?>, Long> CLASS_2_SIZE = new ConcurrentHashMap<>();
+
+    private ECSMemory() {
+    }
+
+    /**
+     * @param type the class
+     * @return the shallow size of one instance of the class
+     */
+    static long shallowSize(Class<?> type) {
+        return CLASS_2_SIZE.computeIfAbsent(type, ECSMemory::computeShallowSize);
+    }
+
+    private static long computeShallowSize(Class<?> type) {
+        long size = HEADER;
+        for (Class<?> current = type; current != null; current = current.getSuperclass()) {
+            for (Field field : current.getDeclaredFields()) {
+                if (!Modifier.isStatic(field.getModifiers())) {
+                    size += fieldSize(field.getType());
+                }
+            }
+        }
+        return align(size);
+    }
+
+    private static int fieldSize(Class<?> type) {
+        if (type == long.class || type == double.class) {
+            return 8;
+        }
+        if (type == int.class || type == float.class) {
+            return 4;
+        }
+        if (type == short.class || type == char.class) {
+            return 2;
+        }
+        if (type == byte.class || type == boolean.class) {
+            return 1;
+        }
+        return REFERENCE;
+    }
+
+    /**
+     * @param length the length of the array
+     * @param elementSize the size of one element
+     * @return the size of the array
+     */
+    static long array(int length, int elementSize) {
+        return align(ARRAY_HEADER + (long) length * elementSize);
+    }
+
+    /**
+     * @param capacity the capacity of the entity list
+     * @return the size of an {@link ECSEntityList}
+     */
+    static long entityList(int capacity) {
+        return align(HEADER + REFERENCE + 4 * 3 + 1) + array(capacity, 4);
+    }
+
+    /**
+     * @param components the number of components
+     * @return the size of the component list of one entity (without the
+     * components)
+     */
+    static long componentList(int components) {
+        return align(HEADER + REFERENCE + 4 * 2) + array(components, REFERENCE);
+    }
+
+    /**
+     * The table of a {@link java.util.HashMap} never shrinks, its size is
+     * derived from the largest number of entries the map held.
+     *
+     * @param entries the current number of entries
+     * @param peak the largest number of entries
+     * @return the size of a map with boxed integer keys (without the values)
+     */
+    static long idMap(int entries, int peak) {
+        final int table = Integer.highestOneBit(Math.max(1, (int) Math.ceil(peak / 0.75)) * 2 - 1);
+        return HASH_MAP + array(table, REFERENCE) + (long) entries * (HASH_MAP_NODE + INTEGER);
+    }
+
+    private static long align(long size) {
+        return (size + 7) & ~7L;
+    }
+
+}
@@ -0,0 +1,270 @@
+/*
+ * Copyright (C) 2019 nickscha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.github.nickscha.ecs4j;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.OptionalInt;
+import java.util.PrimitiveIterator;
+import java.util.Spliterator;
+import java.util.function.IntConsumer;
+import java.util.function.ObjIntConsumer;
+import java.util.function.Predicate;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * ECS4J Query
+ * <p>
+ * Lazy, on-demand view of the entities matching an {@link ECSArchetype}. The
+ * entities are visited in the order of their storage without allocating per
+ * entity, so short-circuiting operations like {@link #findFirst()} or
+ * {@link Stream#limit(long)} stop as soon as the result is known. The
+ * {@link #spliterator()} splits along chunks of {@value ECSBatch#CAPACITY}
+ * slots, which lets parallel streams divide the work evenly.
+ * </p>
+ * <b>Example:</b>
+ *
+ * <pre>
+ * OptionalInt entityId = em.query(ECSArchetype.builder().all(Position.class).build())
+ *         .filter(components -&gt; ((Position) components.get(0)).x &gt; 100)
+ *         .findFirst();
+ * </pre>
+ *
+ * @author nickscha
+ * @since 0.0.1
+ */
+public final class ECSQuery {
+
+    private final Map<Integer, List<ECSComponent>> eId2data;
+    private final Map<Integer, ECSComposition> eId2composition;
+    private final ECSEntityList[] sources;
+    // first slot of each source in the concatenation of all sources
+    private final int[] offsets;
+    private final ECSJoin join;
+    private Predicate<List<ECSComponent>> filter;
+
+    ECSQuery(Map<Integer, List<ECSComponent>> eId2data, Map<Integer, ECSComposition> eId2composition, List<ECSEntityList> sources, ECSJoin join) {
+        this.eId2data = eId2data;
+        this.eId2composition = eId2composition;
+        this.sources = sources.toArray(new ECSEntityList[0]);
+        this.offsets = new int[this.sources.length + 1];
+        for (int i = 0; i < this.sources.length; i++) {
+            offsets[i + 1] = offsets[i] + this.sources[i].slots();
+        }
+        this.join = join;
+    }
+
+    /**
+     * Restricts the query to entities whose components satisfy the predicate.
+     * Multiple filters are combined.
+     *
+     * @param predicate the predicate on the components of an entity
+     * @return this query
+     */
+    public ECSQuery filter(Predicate<List<ECSComponent>> predicate) {
+        filter = filter == null ? predicate : filter.and(predicate);
+        return this;
+    }
+
+    /**
+     * @return a spliterator over the matching entity ids
+     */
+    public Spliterator.OfInt spliterator() {
+        return new Chunks(0, offsets[sources.length]);
+    }
+
+    /**
+     * @return an iterator over the matching entity ids
+     */
+    public PrimitiveIterator.OfInt iterator() {
+        return new Entities(spliterator());
+    }
+
+    /**
+     * @return a sequential stream of the matching entity ids
+     */
+    public IntStream entityIds() {
+        return StreamSupport.intStream(spliterator(), false);
+    }
+
+    /**
+     * @return a sequential stream of the components of the matching entities
+     */
+    public Stream<List<ECSComponent>> stream() {
+        return entityIds().mapToObj(eId2data::get);
+    }
+
+    /**
+     * @return a parallel stream of the components of the matching entities
+     */
+    public Stream<List<ECSComponent>> parallelStream() {
+        return entityIds().parallel().mapToObj(eId2data::get);
+    }
+
+    /**
+     * @return the first matching entity id
+     */
+    public OptionalInt findFirst() {
+        final Entities entities = new Entities(spliterator());
+        return entities.hasNext() ? OptionalInt.of(entities.nextInt()) : OptionalInt.empty();
+    }
+
+    /**
+     * @return the number of matching entities
+     */
+    public int count() {
+        final int[] count = {0};
+        spliterator().forEachRemaining((int entityId) -> count[0]++);
+        return count[0];
+    }
+
+    /**
+     * Visits all matching entities.
+     *
+     * @param action the action per entity, receiving the components and the
+     * entity id
+     */
+    public void forEach(ObjIntConsumer<List<ECSComponent>> action) {
+        final Map<Integer, List<ECSComponent>> eId2data = this.eId2data;
+        spliterator().forEachRemaining((int entityId) -> action.accept(eId2data.get(entityId), entityId));
+    }
+
+    private boolean accept(int entityId) {
+        return entityId != ECSEntityList.HOLE
+                && (join == null || join.accept(entityId, eId2composition))
+                && (filter == null || filter.test(eId2data.get(entityId)));
+    }
+
+    /**
+     * Iterator over a spliterator, receiving each entity id as the consumer of
+     * the spliterator.
+     */
+    private static final class Entities implements PrimitiveIterator.OfInt, IntConsumer {
+
+        private final Spliterator.OfInt spliterator;
+        private boolean ready;
+        private int next;
+
+        Entities(Spliterator.OfInt spliterator) {
+            this.spliterator = spliterator;
+        }
+
+        @Override
+        public void accept(int entityId) {
+            next = entityId;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (!ready) {
+                ready = spliterator.tryAdvance(this);
+            }
+            return ready;
+        }
+
+        @Override
+        public int nextInt() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            ready = false;
+            return next;
+        }
+    }
+
+    /**
+     * Spliterator over a range of the concatenated slots of all sources.
+     */
+    private final class Chunks implements Spliterator.OfInt {
+
+        private int position;
+        private final int end;
+        private int source;
+
+        Chunks(int position, int end) {
+            this.position = position;
+            this.end = end;
+            this.source = source(position);
+        }
+
+        private int source(int slot) {
+            final int index = Arrays.binarySearch(offsets, slot);
+            // sources without slots share their offset with the next one
+            int source = index >= 0 ? index : -index - 2;
+            while (source < sources.length - 1 && offsets[source + 1] <= slot) {
+                source++;
+            }
+            return source;
+        }
+
+        @Override
+        public boolean tryAdvance(IntConsumer action) {
+            while (position < end) {
+                while (position >= offsets[source + 1]) {
+                    source++;
+                }
+                final int entityId = sources[source].get(position - offsets[source]);
+                position++;
+                if (accept(entityId)) {
+                    action.accept(entityId);
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public void forEachRemaining(IntConsumer action) {
+            for (; position < end; position++) {
+                while (position >= offsets[source + 1]) {
+                    source++;
+                }
+                final int entityId = sources[source].get(position - offsets[source]);
+                if (accept(entityId)) {
+                    action.accept(entityId);
+                }
+            }
+        }
+
+        @Override
+        public Spliterator.OfInt trySplit() {
+            final int chunks = (end - position) / ECSBatch.CAPACITY;
+            if (chunks < 2) {
+                return null;
+            }
+            final int middle = position + chunks / 2 * ECSBatch.CAPACITY;
+            final Chunks prefix = new Chunks(position, middle);
+            position = middle;
+            source = source(middle);
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize() {
+            return end - position;
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | DISTINCT | NONNULL;
+        }
+    }
+
+}
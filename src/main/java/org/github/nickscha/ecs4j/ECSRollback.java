@@ -0,0 +1,217 @@
+/*
+ * Copyright (C) 2019 nickscha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.github.nickscha.ecs4j;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+/**
+ * ECS4J Rollback
+ * <p>
+ * Ring buffer of the recent states of a world, e.g. to rewind a few frames
+ * for lag compensation, apply corrected input and resimulate. A state is split
+ * into pages of {@value #PAGE_SIZE} consecutive entity ids holding the encoded
+ * replicated components (see {@link ECSEntityManager#codec(Class,
+ * ECSComponentCodec, java.util.function.BiConsumer)}). Pages are immutable
+ * and shared between states, saving a frame only encodes the pages with
+ * changes since the previous save (see {@link ECSSystem#writes()} and
+ * {@link ECSEntityManager#markChanged(int, Class)}) and restoring a frame
+ * only decodes the pages which differ from the current state. Components
+ * without codec are not part of the states and stay untouched on restore.
+ * </p>
+ * <b>Example:</b>
+ *
+ * <pre>
+ * ECSRollback rollback = em.rollback(10);
+ * em.update();
+ * rollback.save(frame);
+ * ...
+ * rollback.restore(frame - 3);
+ * // apply corrected input and resimulate 3 frames
+ * </pre>
+ *
+ * @author nickscha
+ * @since 0.0.1
+ */
+public final class ECSRollback {
+
+    static final int PAGE_BITS = 8;
+    static final int PAGE_SIZE = 1 << PAGE_BITS;
+
+    private final ECSEntityManager em;
+    private final long[] frames;
+    private final byte[][][] states;
+    private int newest = -1;
+    private int size;
+    // position in the change journal at the newest save
+    private long savedSequence;
+
+    ECSRollback(ECSEntityManager em, int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        if (!em.replicated()) {
+            throw new IllegalStateException("No codecs registered");
+        }
+        this.em = em;
+        this.frames = new long[capacity];
+        this.states = new byte[capacity][][];
+    }
+
+    /**
+     * Saves the current state of the world. If the buffer is full the oldest
+     * frame is dropped.
+     *
+     * @param frame the frame number, greater than the newest saved frame
+     */
+    public void save(long frame) {
+        if (size > 0 && frame <= frames[newest]) {
+            throw new IllegalArgumentException("Frame " + frame + " is not newer than " + frames[newest]);
+        }
+        final int pages = pages(em.entityIdBound());
+        final byte[][] state;
+        final long[] changes = size == 0 ? null : em.changes(savedSequence);
+        if (changes == null) {
+            state = new byte[pages][];
+            for (int page = 0; page < pages; page++) {
+                state[page] = encode(page);
+            }
+        } else {
+            state = Arrays.copyOf(states[newest], pages);
+            final BitSet dirty = dirtyPages(changes);
+            for (int page = dirty.nextSetBit(0); page >= 0 && page < pages; page = dirty.nextSetBit(page + 1)) {
+                state[page] = encode(page);
+            }
+        }
+        newest = (newest + 1) % frames.length;
+        frames[newest] = frame;
+        states[newest] = state;
+        size = Math.min(size + 1, frames.length);
+        savedSequence = em.journalSequence();
+    }
+
+    /**
+     * Restores the world to a saved frame and drops all newer frames, so the
+     * resimulated frames can be saved again.
+     *
+     * @param frame the frame number
+     * @throws IllegalArgumentException if the frame is not buffered
+     */
+    public void restore(long frame) {
+        final int index = indexOf(frame);
+        if (index < 0) {
+            throw new IllegalArgumentException("Frame " + frame + " is not buffered");
+        }
+        final byte[][] target = states[index];
+        final byte[][] current = states[newest];
+        final long[] changes = em.changes(savedSequence);
+        final int pages = Math.max(pages(em.entityIdBound()), Math.max(target.length, current.length));
+        final BitSet dirty = changes == null ? new BitSet() : dirtyPages(changes);
+        if (changes == null) {
+            dirty.set(0, pages);
+        }
+        for (int page = 0; page < pages; page++) {
+            if (page(target, page) != page(current, page)) {
+                dirty.set(page);
+            }
+        }
+        for (int page = dirty.nextSetBit(0); page >= 0 && page < pages; page = dirty.nextSetBit(page + 1)) {
+            em.restorePage(page << PAGE_BITS, (page + 1) << PAGE_BITS, page(target, page));
+        }
+        size -= (newest - index + frames.length) % frames.length;
+        newest = index;
+        // the world matches the restored state, the changes made by the restore need not be encoded again
+        savedSequence = em.journalSequence();
+    }
+
+    /**
+     * @param frame the frame number
+     * @return true if the frame is buffered
+     */
+    public boolean contains(long frame) {
+        return indexOf(frame) >= 0;
+    }
+
+    /**
+     * @return the number of buffered frames
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the newest buffered frame
+     * @throws IllegalStateException if no frame is buffered
+     */
+    public long newestFrame() {
+        if (size == 0) {
+            throw new IllegalStateException("No frame buffered");
+        }
+        return frames[newest];
+    }
+
+    /**
+     * @return the size of all buffered pages, shared pages are counted once
+     */
+    public long bytes() {
+        final Set<byte[]> pages = Collections.newSetFromMap(new IdentityHashMap<>());
+        long bytes = 0;
+        for (int i = 0; i < size; i++) {
+            final byte[][] state = states[(newest - i + frames.length) % frames.length];
+            bytes += ECSMemory.array(state.length, 4);
+            for (byte[] page : state) {
+                if (page != null && pages.add(page)) {
+                    bytes += ECSMemory.array(page.length, 1);
+                }
+            }
+        }
+        return bytes;
+    }
+
+    private int indexOf(long frame) {
+        for (int i = 0; i < size; i++) {
+            final int index = (newest - i + frames.length) % frames.length;
+            if (frames[index] == frame) {
+                return index;
+            }
+        }
+        return -1;
+    }
+
+    private byte[] encode(int page) {
+        return em.encodePage(page << PAGE_BITS, (page + 1) << PAGE_BITS);
+    }
+
+    private static BitSet dirtyPages(long[] changes) {
+        final BitSet dirty = new BitSet();
+        for (long change : changes) {
+            dirty.set(ECSJournal.entityId(change) >>> PAGE_BITS);
+        }
+        return dirty;
+    }
+
+    private static byte[] page(byte[][] state, int page) {
+        return page < state.length ? state[page] : null;
+    }
+
+    private static int pages(int entityIdBound) {
+        return (entityIdBound + PAGE_SIZE - 1) >>> PAGE_BITS;
+    }
+
+}
@@ -0,0 +1,435 @@
+/*
+ * Copyright (C) 2019 nickscha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.github.nickscha.ecs4j;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * ECS4J Shards
+ * <p>
+ * One simulation split into partitions, e.g. by spatial region. Each partition
+ * is an independent {@link ECSEntityManager} with its own systems and is
+ * updated on its own thread. The partition of an entity is given by the key
+ * function; entities whose key changed during a tick migrate to their new
+ * partition in batches at the end of {@link #update()}. Entity ids are unique
+ * across all partitions and stay the same on migration. If the key components
+ * are declared (see {@link Builder#key(ToIntFunction, Class...)}) only the
+ * entities written by the systems are keyed again, otherwise all entities.
+ * </p>
+ * <b>Example:</b>
+ *
+ * <pre>
+ * ECSShards shards = ECSShards.builder()
+ *         .partitions(4)
+ *         .key(components -&gt; (int) ((Position) components.get(0)).x / 1000, Position.class)
+ *         .system(MovementSystem::new)
+ *         .build();
+ * shards.createEntity(new Position(0, 0), new Velocity(1, 1));
+ * shards.update();
+ * </pre>
+ *
+ * <p>
+ * The partitions tick in three phases with a barrier in between (merge of the
+ * staged entities, systems, buffer swap and compaction) followed by the
+ * migration. Entities are not added, removed or moved while the systems run,
+ * so systems can look up entities of other partitions with
+ * {@link #components(int)} without locking. The components of another
+ * partition may be written concurrently by its systems;
+ * {@link ECSBufferedComponent#read()} gives a consistent view of the previous
+ * tick. Systems must not modify entities of other partitions, new entities can
+ * be created from any thread with {@link #stageEntity(List)}.
+ * </p>
+ *
+ * @author nickscha
+ * @since 0.0.1
+ */
+public final class ECSShards implements AutoCloseable {
+
+    private final ECSEntityManager[] partitions;
+    private final ToIntFunction<List<ECSComponent>> key;
+    // the components the key depends on, empty if not declared
+    private final Set<Class<? extends ECSComponent>> keyComponents;
+    private final ExecutorService workers;
+    // outboxes[source][target] holds the entities leaving source for target
+    private final Outbox[][] outboxes;
+    // the written entities of each partition which are keyed again
+    private final Outbox[] candidates;
+    private long migrated;
+
+    private ECSShards(Builder builder) {
+        this.key = builder.key;
+        this.keyComponents = builder.keyComponents;
+        this.partitions = new ECSEntityManager[builder.partitions];
+        this.outboxes = new Outbox[builder.partitions][builder.partitions];
+        this.candidates = new Outbox[builder.partitions];
+        final AtomicInteger entityIds = new AtomicInteger(0);
+        for (int i = 0; i < partitions.length; i++) {
+            final ECSEntityManager partition = ECSEntityManager.create()
+                    .entityIds(entityIds)
+                    .executor(ECSExecutors.callerThread());
+            for (Consumer<ECSEntityManager> configuration : builder.configurations) {
+                configuration.accept(partition);
+            }
+            for (Supplier<? extends ECSSystem> system : builder.systems) {
+                partition.createSystem(system.get());
+            }
+            partitions[i] = partition;
+            candidates[i] = new Outbox();
+            for (int target = 0; target < partitions.length; target++) {
+                outboxes[i][target] = new Outbox();
+            }
+        }
+        this.workers = ECSExecutors.fixed(partitions.length);
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public int createEntity(ECSComponent... components) {
+        return createEntity(Arrays.asList(components));
+    }
+
+    /**
+     * Creates an entity in the partition given by the key function. Must not
+     * be called during {@link #update()}.
+     *
+     * @param components the components of the entity
+     * @return the id of the entity
+     */
+    public int createEntity(List<ECSComponent> components) {
+        return partitions[partitionOf(components)].createEntity(components);
+    }
+
+    public int stageEntity(ECSComponent... components) {
+        return stageEntity(Arrays.asList(components));
+    }
+
+    /**
+     * Stages an entity in the partition given by the key function, see
+     * {@link ECSEntityManager#stageEntity(List)}. Can be called from any
+     * thread, also from systems.
+     *
+     * @param components the components of the entity
+     * @return the id of the entity
+     */
+    public int stageEntity(List<ECSComponent> components) {
+        return partitions[partitionOf(components)].stageEntity(components);
+    }
+
+    /**
+     * Must not be called during {@link #update()}.
+     *
+     * @param entityId the entity id
+     * @return true if the entity existed
+     */
+    public boolean removeEntity(int entityId) {
+        final int partition = partitionOf(entityId);
+        return partition >= 0 && partitions[partition].removeEntity(entityId);
+    }
+
+    public boolean hasEntity(int entityId) {
+        return partitionOf(entityId) >= 0;
+    }
+
+    /**
+     * Read-only lookup of an entity in any partition, can be called from the
+     * systems of all partitions.
+     *
+     * @param entityId the entity id
+     * @return the unmodifiable components of the entity or null if it does
+     * not exist
+     */
+    public List<ECSComponent> components(int entityId) {
+        for (ECSEntityManager partition : partitions) {
+            final List<ECSComponent> components = partition.components(entityId);
+            if (components != null) {
+                return Collections.unmodifiableList(components);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param entityId the entity id
+     * @return the index of the partition holding the entity or -1 if it does
+     * not exist
+     */
+    public int partitionOf(int entityId) {
+        for (int i = 0; i < partitions.length; i++) {
+            if (partitions[i].hasEntity(entityId)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Gives access to a partition, e.g. for queries or statistics. Entities
+     * created directly in a partition get ids unique across all partitions
+     * and migrate like all others.
+     *
+     * @param index the index of the partition
+     * @return the partition
+     */
+    public ECSEntityManager partition(int index) {
+        return partitions[index];
+    }
+
+    /**
+     * @return the number of partitions
+     */
+    public int partitions() {
+        return partitions.length;
+    }
+
+    /**
+     * @return the number of migrations since the shards have been created
+     */
+    public long migrated() {
+        return migrated;
+    }
+
+    /**
+     * Updates all partitions in parallel and migrates the entities whose key
+     * changed.
+     */
+    public void update() {
+        phase(i -> partitions[i].beginTick());
+        phase(i -> partitions[i].runSystems());
+        phase(i -> {
+            // the visited slots are only valid until the lists are compacted
+            collectCandidates(i);
+            partitions[i].endTick();
+            emigrate(i);
+        });
+        phase(this::immigrate);
+        for (Outbox[] outbox : outboxes) {
+            for (Outbox moves : outbox) {
+                migrated += moves.size;
+                moves.clear();
+            }
+        }
+    }
+
+    /**
+     * Shuts the worker threads down and disposes the partitions.
+     */
+    @Override
+    public void close() {
+        workers.shutdownNow();
+        for (ECSEntityManager partition : partitions) {
+            partition.dispose();
+        }
+    }
+
+    private void phase(IntConsumer action) {
+        final CompletableFuture<?>[] futures = new CompletableFuture<?>[partitions.length];
+        for (int i = 0; i < partitions.length; i++) {
+            final int partition = i;
+            futures[i] = CompletableFuture.runAsync(() -> action.accept(partition), workers);
+        }
+        try {
+            CompletableFuture.allOf(futures).get();
+        } catch (InterruptedException | ExecutionException ex) {
+            Logger.getLogger(ECSShards.class.getName()).log(Level.SEVERE, null, ex);
+        }
+    }
+
+    /**
+     * Collects the distinct entities written by the systems of the partition
+     * if the key components are declared.
+     */
+    private void collectCandidates(int source) {
+        if (keyComponents.isEmpty()) {
+            return;
+        }
+        final Outbox written = candidates[source];
+        written.clear();
+        partitions[source].forEachWritten(keyComponents, written::add);
+        written.distinct();
+    }
+
+    /**
+     * Detaches the entities of the partition whose key points to another
+     * partition. Only touches the partition and its own outboxes.
+     */
+    private void emigrate(int source) {
+        final ECSEntityManager partition = partitions[source];
+        final Outbox[] outbox = outboxes[source];
+        if (keyComponents.isEmpty()) {
+            partition.forEachEntity((components, entityId) -> {
+                final int target = partitionOf(components);
+                if (target != source) {
+                    outbox[target].add(entityId);
+                }
+            });
+        } else {
+            final Outbox written = candidates[source];
+            for (int i = 0; i < written.size; i++) {
+                final int target = partitionOf(partition.components(written.entityIds[i]));
+                if (target != source) {
+                    outbox[target].add(written.entityIds[i]);
+                }
+            }
+        }
+        for (Outbox moves : outbox) {
+            if (moves.size > 0) {
+                moves.components.addAll(partition.detachEntities(moves.entityIds, moves.size));
+            }
+        }
+    }
+
+    /**
+     * Attaches the entities sent to the partition. Only touches the partition
+     * and the outboxes addressed to it.
+     */
+    private void immigrate(int target) {
+        final ECSEntityManager partition = partitions[target];
+        for (Outbox[] outbox : outboxes) {
+            final Outbox moves = outbox[target];
+            for (int i = 0; i < moves.size; i++) {
+                partition.attachEntity(moves.entityIds[i], moves.components.get(i));
+            }
+        }
+    }
+
+    private int partitionOf(List<ECSComponent> components) {
+        return Math.floorMod(key.applyAsInt(components), partitions.length);
+    }
+
+    private static final class Outbox {
+
+        private int[] entityIds = new int[16];
+        private final List<List<ECSComponent>> components = new ArrayList<>();
+        private int size;
+
+        void add(int entityId) {
+            if (size == entityIds.length) {
+                entityIds = Arrays.copyOf(entityIds, size * 2);
+            }
+            entityIds[size++] = entityId;
+        }
+
+        void clear() {
+            size = 0;
+            components.clear();
+        }
+
+        /**
+         * Removes duplicate entity ids.
+         */
+        void distinct() {
+            Arrays.sort(entityIds, 0, size);
+            int n = 0;
+            for (int i = 0; i < size; i++) {
+                if (n == 0 || entityIds[n - 1] != entityIds[i]) {
+                    entityIds[n++] = entityIds[i];
+                }
+            }
+            size = n;
+        }
+
+    }
+
+    public static class Builder {
+
+        private int partitions = Runtime.getRuntime().availableProcessors();
+        private ToIntFunction<List<ECSComponent>> key;
+        private Set<Class<? extends ECSComponent>> keyComponents = Collections.emptySet();
+        private final List<Supplier<? extends ECSSystem>> systems = new ArrayList<>();
+        private final List<Consumer<ECSEntityManager>> configurations = new ArrayList<>();
+
+        /**
+         * @param partitions the number of partitions (default: the number of
+         * available processors)
+         * @return this builder
+         */
+        public Builder partitions(int partitions) {
+            this.partitions = partitions;
+            return this;
+        }
+
+        /**
+         * The partition of an entity is the key modulo the number of
+         * partitions. With the components the key depends on, the key is
+         * evaluated at the end of each tick only for the entities visited by
+         * systems which declare one of them in {@link ECSSystem#writes()}, so
+         * the cost of the migration depends on the written entities. Changes
+         * of these components outside of such systems do not move the entity.
+         * Without components the key is evaluated for every entity of every
+         * partition each tick.
+         *
+         * @param key maps the components of an entity to its partition
+         * @param components the component types the key depends on
+         * @return this builder
+         */
+        public Builder key(ToIntFunction<List<ECSComponent>> key, Class<? extends ECSComponent>... components) {
+            this.key = Objects.requireNonNull(key, "key");
+            this.keyComponents = new HashSet<>(Arrays.asList(components));
+            return this;
+        }
+
+        /**
+         * @param system creates one instance of the system per partition
+         * @return this builder
+         */
+        public Builder system(Supplier<? extends ECSSystem> system) {
+            this.systems.add(Objects.requireNonNull(system, "system"));
+            return this;
+        }
+
+        /**
+         * Applied to each partition before the systems are created, e.g. to
+         * register codecs or sparse components.
+         *
+         * @param configuration the configuration of a partition
+         * @return this builder
+         */
+        public Builder configure(Consumer<ECSEntityManager> configuration) {
+            this.configurations.add(Objects.requireNonNull(configuration, "configuration"));
+            return this;
+        }
+
+        public ECSShards build() {
+            if (key == null) {
+                throw new IllegalStateException("A key function is required");
+            }
+            if (partitions <= 0) {
+                throw new IllegalStateException("partitions must be positive");
+            }
+            return new ECSShards(this);
+        }
+
+    }
+
+}
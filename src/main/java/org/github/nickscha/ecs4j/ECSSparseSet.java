@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2019 nickscha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.github.nickscha.ecs4j;
+
+import java.util.Arrays;
+
+/**
+ * ECS4J Sparse Set
+ * <p>
+ * Standalone storage of one component type which is added and removed
+ * frequently. Adding and removing a component is O(1) and does not move the
+ * entity to another composition. The entities are kept densely packed (the
+ * last entity fills the gap of a removed one), the index from entity id to
+ * dense position is split into lazily allocated pages.
+ * </p>
+ *
+ * @author nickscha
+ * @since 0.0.1
+ */
+final class ECSSparseSet {
+
+    private static final int PAGE_BITS = 12;
+    private static final int PAGE_SIZE = 1 << PAGE_BITS;
+    private static final int PAGE_MASK = PAGE_SIZE - 1;
+
+    // dense position + 1 per entity id, 0 if the entity is not contained
+    private int[][] pages = new int[16][];
+    private int[] entities = new int[16];
+    private ECSComponent[] components = new ECSComponent[16];
+    private int pageCount;
+    private int size;
+
+    /**
+     * Adds the component of the entity or replaces the previous one.
+     *
+     * @return true if the entity was not contained before
+     */
+    boolean add(int entityId, ECSComponent component) {
+        final int index = index(entityId);
+        if (index >= 0) {
+            components[index] = component;
+            return false;
+        }
+        if (size == entities.length) {
+            entities = Arrays.copyOf(entities, size * 2);
+            components = Arrays.copyOf(components, size * 2);
+        }
+        entities[size] = entityId;
+        components[size] = component;
+        size++;
+        page(entityId)[entityId & PAGE_MASK] = size;
+        return true;
+    }
+
+    boolean remove(int entityId) {
+        final int index = index(entityId);
+        if (index < 0) {
+            return false;
+        }
+        final int last = --size;
+        if (index != last) {
+            entities[index] = entities[last];
+            components[index] = components[last];
+            pages[entities[index] >>> PAGE_BITS][entities[index] & PAGE_MASK] = index + 1;
+        }
+        components[last] = null;
+        pages[entityId >>> PAGE_BITS][entityId & PAGE_MASK] = 0;
+        return true;
+    }
+
+    boolean contains(int entityId) {
+        return index(entityId) >= 0;
+    }
+
+    /**
+     * @return the component of the entity or null
+     */
+    ECSComponent get(int entityId) {
+        final int index = index(entityId);
+        return index < 0 ? null : components[index];
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * @param index the dense position (0 - size)
+     * @return the entity id at the position
+     */
+    int entityId(int index) {
+        return entities[index];
+    }
+
+    /**
+     * @return the estimated size of this set (without the components)
+     */
+    long bytes() {
+        return ECSMemory.array(pages.length, 4) + pageCount * ECSMemory.array(PAGE_SIZE, 4)
+                + ECSMemory.array(entities.length, 4) + ECSMemory.array(components.length, 4);
+    }
+
+    private int index(int entityId) {
+        final int page = entityId >>> PAGE_BITS;
+        if (page >= pages.length || pages[page] == null) {
+            return -1;
+        }
+        return pages[page][entityId & PAGE_MASK] - 1;
+    }
+
+    private int[] page(int entityId) {
+        final int page = entityId >>> PAGE_BITS;
+        if (page >= pages.length) {
+            pages = Arrays.copyOf(pages, Math.max(pages.length * 2, page + 1));
+        }
+        if (pages[page] == null) {
+            pages[page] = new int[PAGE_SIZE];
+            pageCount++;
+        }
+        return pages[page];
+    }
+
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2019 nickscha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.github.nickscha.ecs4j;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * ECS4J Staging
+ * <p>
+ * Lock-free staging area for entities created by producer threads while the
+ * world is updated. Producers are spread over striped queues by thread id so
+ * they rarely contend; the entity manager drains all stripes in bulk at the
+ * next tick boundary.
+ * </p>
+ *
+ * @author nickscha
+ * @since 0.0.1
+ */
+final class ECSStaging {
+
+    private final ConcurrentLinkedQueue<Staged>[] stripes;
+    private final int mask;
+    private final LongAdder staged = new LongAdder();
+    private long drained;
+
+    ECSStaging() {
+        final int count = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors() * 2 - 1)) << 1;
+        @SuppressWarnings({"rawtypes", "unchecked"})
+        final ConcurrentLinkedQueue<Staged>[] queues = new ConcurrentLinkedQueue[count];
+        for (int i = 0; i < count; i++) {
+            queues[i] = new ConcurrentLinkedQueue<>();
+        }
+        this.stripes = queues;
+        this.mask = count - 1;
+    }
+
+    void stage(int entityId, List<ECSComponent> components) {
+        stripes[(int) Thread.currentThread().getId() & mask].offer(new Staged(entityId, components));
+        staged.increment();
+    }
+
+    boolean isEmpty() {
+        return staged.sum() == drained;
+    }
+
+    /**
+     * Drains the entities staged before this call. Entities staged
+     * concurrently may be drained or stay for the next call, so producers
+     * outpacing the drain cannot keep it from returning.
+     *
+     * @param action the action receiving the components and entity id
+     */
+    void drain(ObjIntConsumer<List<ECSComponent>> action) {
+        long budget = staged.sum() - drained;
+        for (ConcurrentLinkedQueue<Staged> stripe : stripes) {
+            Staged entry;
+            while (budget > 0 && (entry = stripe.poll()) != null) {
+                action.accept(entry.components, entry.entityId);
+                drained++;
+                budget--;
+            }
+        }
+    }
+
+    private static final class Staged {
+
+        private final int entityId;
+        private final List<ECSComponent> components;
+
+        private Staged(int entityId, List<ECSComponent> components) {
+            this.entityId = entityId;
+            this.components = components;
+        }
+    }
+
+}
@@ -0,0 +1,205 @@
+/*
+ * Copyright (C) 2019 nickscha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.github.nickscha.ecs4j;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * ECS4J Statistics
+ * <p>
+ * Immutable snapshot of the runtime statistics of an
+ * {@link ECSEntityManager}, see {@link ECSEntityManager#statistics()}.
+ * </p>
+ * <p>
+ * The memory figures are estimates derived from the number and capacity of
+ * the storage structures and the declared fields of the component classes;
+ * the snapshot does not iterate the entities and is cheap enough to be taken
+ * every few seconds.
+ * </p>
+ *
+ * @author nickscha
+ * @since 0.0.1
+ */
+public final class ECSStatistics {
+
+    private final int entities;
+    private final int systems;
+    private final Map<ECSArchetype, Double> fragmentation;
+    private final Map<ECSArchetype, Footprint> archetypes;
+    private final Map<Set<Class<? extends ECSComponent>>, Footprint> tables;
+    private final Map<Class<? extends ECSComponent>, Footprint> components;
+    private final long idMapBytes;
+    private final long sparseBytes;
+
+    ECSStatistics(int entities, int systems, Map<ECSArchetype, Double> fragmentation, Map<ECSArchetype, Footprint> archetypes,
+            Map<Set<Class<? extends ECSComponent>>, Footprint> tables, Map<Class<? extends ECSComponent>, Footprint> components, long idMapBytes,
+            long sparseBytes) {
+        this.entities = entities;
+        this.systems = systems;
+        this.fragmentation = Collections.unmodifiableMap(fragmentation);
+        this.archetypes = Collections.unmodifiableMap(archetypes);
+        this.tables = Collections.unmodifiableMap(tables);
+        this.components = Collections.unmodifiableMap(components);
+        this.idMapBytes = idMapBytes;
+        this.sparseBytes = sparseBytes;
+    }
+
+    /**
+     * @return the number of entities
+     */
+    public int entities() {
+        return entities;
+    }
+
+    /**
+     * @return the number of systems
+     */
+    public int systems() {
+        return systems;
+    }
+
+    /**
+     * The fragmentation per archetype is the share of membership slots which
+     * are holes left by removed entities or out of order, between 0 and 1.
+     *
+     * @return the fragmentation per archetype
+     */
+    public Map<ECSArchetype, Double> fragmentation() {
+        return fragmentation;
+    }
+
+    /**
+     * The membership list of each archetype: the entity ids its systems
+     * iterate.
+     *
+     * @return the footprint per archetype
+     */
+    public Map<ECSArchetype, Footprint> archetypes() {
+        return archetypes;
+    }
+
+    /**
+     * The tables of entities sharing the same component types, including
+     * their component objects and per entity component lists.
+     *
+     * @return the footprint per table, keyed by its component types
+     */
+    public Map<Set<Class<? extends ECSComponent>>, Footprint> tables() {
+        return tables;
+    }
+
+    /**
+     * The component objects of each component type over all tables. The
+     * used slots and capacity are the number of component instances, which is
+     * twice the number of entities for double-buffered components.
+     *
+     * @return the footprint per component type
+     */
+    public Map<Class<? extends ECSComponent>, Footprint> components() {
+        return components;
+    }
+
+    /**
+     * @return the estimated bytes of the maps from entity id to entity data
+     */
+    public long idMapBytes() {
+        return idMapBytes;
+    }
+
+    /**
+     * @return the estimated bytes of the sparse sets, including their
+     * component objects
+     */
+    public long sparseBytes() {
+        return sparseBytes;
+    }
+
+    /**
+     * @return the estimated bytes of the whole entity storage
+     */
+    public long heapBytes() {
+        long bytes = idMapBytes + sparseBytes;
+        for (Footprint footprint : archetypes.values()) {
+            bytes += footprint.bytes;
+        }
+        for (Footprint footprint : tables.values()) {
+            bytes += footprint.bytes;
+        }
+        return bytes;
+    }
+
+    @Override
+    public String toString() {
+        return "ECSStatistics{" + "entities=" + entities + ", systems=" + systems + ", heapBytes=" + heapBytes() + ", idMapBytes=" + idMapBytes + ", sparseBytes=" + sparseBytes
+                + ", fragmentation=" + fragmentation + ", archetypes=" + archetypes + ", tables=" + tables + ", components=" + components + '}';
+    }
+
+    /**
+     * Memory footprint of a storage structure.
+     */
+    public static final class Footprint {
+
+        private final int entities;
+        private final int used;
+        private final int capacity;
+        private final long bytes;
+
+        Footprint(int entities, int used, int capacity, long bytes) {
+            this.entities = entities;
+            this.used = used;
+            this.capacity = capacity;
+            this.bytes = bytes;
+        }
+
+        /**
+         * @return the number of entities
+         */
+        public int entities() {
+            return entities;
+        }
+
+        /**
+         * @return the number of used slots of the backing array, including
+         * holes left by removed entities
+         */
+        public int used() {
+            return used;
+        }
+
+        /**
+         * @return the length of the backing array
+         */
+        public int capacity() {
+            return capacity;
+        }
+
+        /**
+         * @return the estimated heap bytes
+         */
+        public long bytes() {
+            return bytes;
+        }
+
+        @Override
+        public String toString() {
+            return "Footprint{" + "entities=" + entities + ", used=" + used + ", capacity=" + capacity + ", bytes=" + bytes + '}';
+        }
+
+    }
+
+}
@@ -15,6 +15,7 @@
  */
 package org.github.nickscha.ecs4j;
 
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -90,4 +91,44 @@ public interface ECSSystem {
      */
     ECSArchetype archetype();
 
+    /**
+     * Declares the component types this system modifies. An empty list means
+     * the access of this system is not declared. Replicated component types
+     * (see {@link ECSEntityManager#delta(long)}) are reported as changed for
+     * every entity the system visited in a tick, a budgeted system only
+     * reports the entities of its slice.
+     *
+     * @return the component types written by this system
+     */
+    default List<Class<? extends ECSComponent>> writes() {
+        return Collections.emptyList();
+    }
+
+    /**
+     * Declares the per tick budget of this system. Systems which do not have
+     * to finish within one tick (e.g. a pathfinding refresh) can spread their
+     * entities over several ticks, see {@link ECSBudget}.
+     * <b>Note:</b> This method will be only called once the system has been
+     * created in the entity manager
+     *
+     * @return the budget, {@link ECSBudget#UNLIMITED} by default
+     */
+    default ECSBudget budget() {
+        return ECSBudget.UNLIMITED;
+    }
+
+    /**
+     * Declares the phase of this system within a tick. Phases run in
+     * ascending order, all systems of a phase have finished before the next
+     * phase starts (e.g. to consume the events of an {@link ECSChannel}
+     * published by systems of an earlier phase).
+     * <b>Note:</b> This method will be only called once the system has been
+     * created in the entity manager
+     *
+     * @return the phase, 0 by default
+     */
+    default int phase() {
+        return 0;
+    }
+
 }
@@ -0,0 +1,194 @@
+/*
+ * Copyright (C) 2019 nickscha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.github.nickscha.ecs4j;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ECSBudgetTest {
+
+    @Test
+    public void testEntityBudget() {
+        ECSEntityManager em = world(1000);
+        LodSystem system = new LodSystem(ECSBudget.entities(300));
+        em.createSystem(system);
+
+        for (int expected : new int[]{300, 300, 300, 100, 300}) {
+            system.visited.clear();
+            em.update();
+            Assert.assertEquals(expected, system.visited.size());
+        }
+        Assert.assertEquals(1000, system.passes.get(0).size());
+    }
+
+    @Test
+    public void testChangesBetweenSlices() {
+        ECSEntityManager em = world(1000).compaction(0, 1);
+        LodSystem system = new LodSystem(ECSBudget.entities(300));
+        em.createSystem(system);
+        em.update();
+
+        // remove visited and pending entities, add new ones and move the slots
+        for (int i = 0; i < 1000; i += 3) {
+            em.removeEntity(i);
+        }
+        final int added = em.createEntity(new Lod(1000));
+        em.compact();
+        for (int i = 0; i < 5; i++) {
+            em.update();
+        }
+
+        final List<Integer> pass = system.passes.get(0);
+        Assert.assertEquals(new HashSet<>(pass).size(), pass.size());
+        Assert.assertTrue(pass.contains(added));
+        for (int entityId = 300; entityId < 1000; entityId++) {
+            Assert.assertEquals(entityId % 3 != 0, pass.contains(entityId));
+        }
+    }
+
+    @Test
+    public void testTimeBudget() {
+        ECSEntityManager em = world(100);
+        LodSystem system = new LodSystem(ECSBudget.time(10, TimeUnit.MILLISECONDS));
+        system.work = TimeUnit.MILLISECONDS.toNanos(1);
+        em.createSystem(system);
+
+        em.update();
+        Assert.assertTrue(system.visited.size() > 0);
+        Assert.assertTrue(system.visited.size() <= 11);
+    }
+
+    @Test
+    public void testBatchSystem() {
+        ECSEntityManager em = world(1000);
+        BatchLodSystem system = new BatchLodSystem();
+        em.createSystem(system);
+
+        em.update();
+        Assert.assertEquals(600, system.count);
+        em.update();
+        Assert.assertEquals(1000, system.count);
+    }
+
+    @Test
+    public void testCompactWithCursors() {
+        ECSEntityList list = new ECSEntityList();
+        for (int entityId : new int[]{5, 1, 4, 2, 3, 0}) {
+            list.add(entityId);
+        }
+        list.remove(1);
+        int[] cursors = {3, 0};
+        list.compact(null, cursors);
+
+        // 5 and 4 were visited and stay before the cursor
+        Assert.assertArrayEquals(new int[]{2, 0}, cursors);
+        Assert.assertEquals(4, list.get(0));
+        Assert.assertEquals(5, list.get(1));
+        Assert.assertEquals(0, list.get(2));
+        Assert.assertEquals(5, list.size());
+        Assert.assertTrue(list.contains(3));
+    }
+
+    private static ECSEntityManager world(int entities) {
+        ECSEntityManager em = ECSEntityManager.create().executor(ECSExecutors.callerThread());
+        for (int i = 0; i < entities; i++) {
+            em.createEntity(new Lod(i));
+        }
+        return em;
+    }
+
+    static class Lod implements ECSComponent {
+
+        final int entityId;
+        int level;
+
+        Lod(int entityId) {
+            this.entityId = entityId;
+        }
+    }
+
+    static class LodSystem implements ECSSystem {
+
+        final ECSBudget budget;
+        final Set<Integer> visited = new HashSet<>();
+        final List<List<Integer>> passes = new ArrayList<>();
+        long work;
+
+        LodSystem(ECSBudget budget) {
+            this.budget = budget;
+            passes.add(new ArrayList<>());
+        }
+
+        @Override
+        public void update(List<ECSComponent> components) {
+            final int entityId = ((Lod) components.get(0)).entityId;
+            List<Integer> pass = passes.get(passes.size() - 1);
+            if (pass.contains(entityId)) {
+                pass = new ArrayList<>();
+                passes.add(pass);
+            }
+            pass.add(entityId);
+            visited.add(entityId);
+            final long end = System.nanoTime() + work;
+            while (System.nanoTime() < end) {
+                // simulated work
+            }
+        }
+
+        @Override
+        public ECSArchetype archetype() {
+            return ECSArchetype.builder().all(Lod.class).build();
+        }
+
+        @Override
+        public ECSBudget budget() {
+            return budget;
+        }
+    }
+
+    static class BatchLodSystem implements ECSBatchSystem {
+
+        int count;
+
+        @Override
+        public void update(ECSBatch batch) {
+            for (int i = 0; i < batch.size(); i++) {
+                ((Lod) batch.components(i).get(0)).level++;
+                count++;
+            }
+        }
+
+        @Override
+        public void update(List<ECSComponent> components) {
+        }
+
+        @Override
+        public ECSArchetype archetype() {
+            return ECSArchetype.builder().all(Lod.class).build();
+        }
+
+        @Override
+        public ECSBudget budget() {
+            return ECSBudget.entities(600);
+        }
+    }
+
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) 2019 nickscha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.github.nickscha.ecs4j;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ECSBufferedComponentTest {
+
+    private static final int CELLS = 1_000;
+    private static final int TICKS = 25;
+
+    @Test
+    public void testShiftIsDeterministic() {
+        final ExecutorService executor = ECSExecutors.forkJoin(4);
+        try {
+            ECSEntityManager em = ECSEntityManager.create().executor(executor);
+            em.createSystem(new ShiftSystem());
+            em.createSystem(new ReadOnlySystem());
+
+            Cell[] cells = new Cell[CELLS];
+            for (int i = 0; i < CELLS; i++) {
+                cells[i] = new Cell(i);
+            }
+            for (int i = 0; i < CELLS; i++) {
+                cells[i].left = cells[(i + CELLS - 1) % CELLS];
+                em.createEntity(cells[i], new Shift());
+            }
+
+            for (int i = 0; i < TICKS; i++) {
+                em.update();
+            }
+
+            for (int i = 0; i < CELLS; i++) {
+                Assert.assertEquals((i + CELLS - TICKS) % CELLS, cells[i].read().value);
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testUnwrittenStateIsCarriedOver() {
+        ECSEntityManager em = ECSEntityManager.create();
+        em.createSystem(new ReadOnlySystem());
+
+        Cell cell = new Cell(42);
+        em.createEntity(cell);
+        Assert.assertNotSame(cell.read(), cell.write());
+
+        em.update();
+        em.update();
+        em.update();
+
+        Assert.assertEquals(42, cell.read().value);
+        Assert.assertEquals(42, cell.write().value);
+    }
+
+    @Test
+    public void testOnlyWrittenComponentsAreCopied() {
+        ECSEntityManager em = ECSEntityManager.create();
+        em.createSystem(new ShiftSystem());
+        em.createSystem(new ReadOnlySystem());
+
+        Cell written = new Cell(1);
+        written.left = written;
+        Cell unwritten = new Cell(2);
+        em.createEntity(written, new Shift());
+        em.createEntity(unwritten);
+
+        for (int i = 0; i < 10; i++) {
+            em.update();
+        }
+
+        Assert.assertEquals(0, unwritten.read().copies + unwritten.write().copies);
+        Assert.assertEquals(2, unwritten.read().value);
+        // the first write works on the copy made when the entity was created,
+        // the write() of the assertion brings the write buffer up to date again
+        Assert.assertEquals(10, written.read().copies + written.write().copies);
+        Assert.assertEquals(1, written.read().value);
+    }
+
+    static class Cell extends ECSBufferedComponent<Cell> {
+
+        int value;
+        int copies;
+        Cell left;
+
+        Cell(int value) {
+            this.value = value;
+        }
+
+        @Override
+        protected Cell copy() {
+            Cell cell = new Cell(value);
+            cell.left = left;
+            return cell;
+        }
+
+        @Override
+        protected void copyFrom(Cell other) {
+            value = other.value;
+            copies++;
+        }
+    }
+
+    static class Shift implements ECSComponent {
+    }
+
+    class ShiftSystem implements ECSSystem {
+
+        @Override
+        public void update(List<ECSComponent> components) {
+            Cell cell = (Cell) components.get(0);
+            cell.write().value = cell.read().left.read().value;
+        }
+
+        @Override
+        public ECSArchetype archetype() {
+            return ECSArchetype.builder().all(Cell.class, Shift.class).build();
+        }
+    }
+
+    class ReadOnlySystem implements ECSSystem {
+
+        @Override
+        @SuppressWarnings("unused")
+        public void update(List<ECSComponent> components) {
+            Cell cell = (Cell) components.get(0);
+            int value = cell.read().value;
+        }
+
+        @Override
+        public ECSArchetype archetype() {
+            return ECSArchetype.builder().all(Cell.class).build();
+        }
+    }
+
+}
@@ -0,0 +1,279 @@
+/*
+ * Copyright (C) 2019 nickscha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.github.nickscha.ecs4j;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ECSChannelTest {
+
+    @Test
+    public void testConsumerSeesEventsOfEarlierPhase() {
+        ECSEntityManager em = ECSEntityManager.create();
+        ECSChannel<Damage> channel = em.channel(Damage::new);
+        DamageSystem damage = new DamageSystem(em, channel);
+        em.createSystem(damage);
+        em.createSystem(new CollisionSystem(channel, 5));
+        for (int i = 0; i < 1000; i++) {
+            em.createEntity(new Health(i, 100));
+        }
+
+        em.update();
+        em.update();
+        Assert.assertEquals(2000, damage.events);
+        Assert.assertEquals(90, ((Health) em.components(0).get(0)).value);
+        // the channel is cleared at the end of the tick
+        Assert.assertEquals(0, channel.size());
+    }
+
+    @Test
+    public void testPhasesRunInOrder() {
+        ECSEntityManager em = ECSEntityManager.create();
+        List<Integer> order = Collections.synchronizedList(new ArrayList<>());
+        em.createSystem(new PhaseSystem(order, 2));
+        em.createSystem(new OtherPhaseSystem(order, -1));
+        em.createSystem(new CollisionSystem(em.channel(Damage::new), 0));
+        em.createEntity(new Health(0, 1));
+
+        em.update();
+        Assert.assertEquals(2, order.size());
+        Assert.assertEquals(-1, (int) order.get(0));
+        Assert.assertEquals(2, (int) order.get(1));
+    }
+
+    @Test
+    public void testParallelProducers() {
+        ExecutorService executor = ECSExecutors.forkJoin(4);
+        try {
+            ECSEntityManager em = ECSEntityManager.create().executor(executor);
+            ECSChannel<Damage> channel = em.channel(Damage::new);
+            DamageSystem damage = new DamageSystem(em, channel);
+            em.createSystem(damage);
+            em.createSystem(new CollisionSystem(channel, 1));
+            em.createSystem(new OtherCollisionSystem(channel));
+            for (int i = 0; i < 10_000; i++) {
+                em.createEntity(new Health(i, 100));
+            }
+
+            em.update();
+            Assert.assertEquals(20_000, damage.events);
+            Assert.assertEquals(98, ((Health) em.components(9_999).get(0)).value);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testEventsAreRecycled() {
+        ECSEntityManager em = ECSEntityManager.create();
+        ECSChannel<Damage> channel = em.channel(Damage::new);
+        Damage first = channel.publish();
+        Assert.assertEquals(1, channel.size());
+
+        em.update();
+        Assert.assertEquals(0, channel.size());
+        Assert.assertSame(first, channel.publish());
+    }
+
+    @Test
+    public void testEventSystemHasNoMembership() {
+        ECSEntityManager em = ECSEntityManager.create();
+        ECSChannel<Damage> channel = em.channel(Damage::new);
+        for (int i = 0; i < 10; i++) {
+            em.createEntity(new Health(i, 100));
+        }
+        em.createSystem(new DamageSystem(em, channel) {
+            @Override
+            public ECSArchetype archetype() {
+                // ignored for event systems
+                return ECSArchetype.builder().all(Health.class).build();
+            }
+        });
+
+        em.update();
+        Assert.assertTrue(em.statistics().archetypes().isEmpty());
+        Assert.assertEquals(1, em.statistics().systems());
+    }
+
+    @Test
+    public void testDisposeClosesChannels() {
+        ECSEntityManager em = ECSEntityManager.create();
+        ECSChannel<Damage> channel = em.channel(Damage::new);
+        channel.publish();
+        ECSChannel<Damage> closed = em.channel(Damage::new);
+        closed.publish();
+        closed.close();
+        Assert.assertEquals(0, closed.size());
+
+        // a closed channel is dropped at the end of the tick
+        em.update();
+        em.dispose();
+        Assert.assertTrue(channel.closed());
+        Assert.assertEquals(0, channel.size());
+        try {
+            channel.publish();
+            Assert.fail();
+        } catch (IllegalStateException expected) {
+        }
+    }
+
+    @Test
+    public void testManyEvents() {
+        ECSEntityManager em = ECSEntityManager.create().executor(ECSExecutors.callerThread());
+        ECSChannel<Damage> channel = em.channel(Damage::new);
+        DamageSystem damage = new DamageSystem(em, channel);
+        em.createSystem(damage);
+        em.createSystem(new CollisionSystem(channel, 1));
+        List<Health> healths = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++) {
+            Health health = new Health(i, 100);
+            healths.add(health);
+            em.createEntity(health);
+        }
+        for (int i = 0; i < 10; i++) {
+            em.update();
+        }
+        Assert.assertEquals(10 * 10_000, damage.events);
+        for (Health health : healths) {
+            Assert.assertEquals(90, health.value);
+        }
+
+        // the event entity pattern leaves no entities behind
+        for (int i = 0; i < 10_000; i++) {
+            em.removeEntity(em.createEntity(new DamageEntity()));
+        }
+        Assert.assertEquals(10_000, em.statistics().entities());
+    }
+
+    static class Damage {
+
+        int target;
+        int amount;
+    }
+
+    static class DamageEntity implements ECSComponent {
+
+        int target;
+        int amount;
+    }
+
+    static class Health implements ECSComponent {
+
+        final int entityId;
+        int value;
+
+        Health(int entityId, int value) {
+            this.entityId = entityId;
+            this.value = value;
+        }
+    }
+
+    static class CollisionSystem implements ECSSystem {
+
+        final ECSChannel<Damage> channel;
+        final int amount;
+
+        CollisionSystem(ECSChannel<Damage> channel, int amount) {
+            this.channel = channel;
+            this.amount = amount;
+        }
+
+        @Override
+        public void update(List<ECSComponent> components) {
+            final Damage event = channel.publish();
+            event.target = ((Health) components.get(0)).entityId;
+            event.amount = amount;
+        }
+
+        @Override
+        public ECSArchetype archetype() {
+            return ECSArchetype.builder().all(Health.class).build();
+        }
+    }
+
+    static class OtherCollisionSystem extends CollisionSystem {
+
+        OtherCollisionSystem(ECSChannel<Damage> channel) {
+            super(channel, 1);
+        }
+    }
+
+    static class DamageSystem implements ECSEventSystem<Damage> {
+
+        final ECSEntityManager em;
+        final ECSChannel<Damage> channel;
+        int events;
+
+        DamageSystem(ECSEntityManager em, ECSChannel<Damage> channel) {
+            this.em = em;
+            this.channel = channel;
+        }
+
+        @Override
+        public ECSChannel<Damage> channel() {
+            return channel;
+        }
+
+        @Override
+        public void update(Damage event) {
+            ((Health) em.components(event.target).get(0)).value -= event.amount;
+            events++;
+        }
+
+        @Override
+        public int phase() {
+            return 1;
+        }
+    }
+
+    static class PhaseSystem implements ECSSystem {
+
+        final List<Integer> order;
+        final int phase;
+
+        PhaseSystem(List<Integer> order, int phase) {
+            this.order = order;
+            this.phase = phase;
+        }
+
+        @Override
+        public void update(List<ECSComponent> components) {
+            order.add(phase);
+        }
+
+        @Override
+        public ECSArchetype archetype() {
+            return ECSArchetype.builder().all(Health.class).build();
+        }
+
+        @Override
+        public int phase() {
+            return phase;
+        }
+    }
+
+    static class OtherPhaseSystem extends PhaseSystem {
+
+        OtherPhaseSystem(List<Integer> order, int phase) {
+            super(order, phase);
+        }
+    }
+
+}
@@ -0,0 +1,292 @@
+/*
+ * Copyright (C) 2019 nickscha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.github.nickscha.ecs4j;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ECSColumnsTest {
+
+    @Test
+    public void testChunkSystem() {
+        ECSEntityManager em = ECSEntityManager.create();
+        MovementSystem system = new MovementSystem();
+        em.createSystem(system);
+        List<Position> positions = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++) {
+            Position pos = new Position(i, 0);
+            positions.add(pos);
+            em.createEntity(pos, new Velocity(1, 2));
+        }
+        em.createEntity(new Position(-1, -1));
+
+        em.update();
+        em.update();
+        Assert.assertEquals(6, system.chunks);
+        Assert.assertEquals(12, positions.get(10).x(), 0.0);
+        Assert.assertEquals(4, positions.get(10).y(), 0.0);
+        // the entity without velocity is not part of the chunks
+        Assert.assertEquals(-1, ((Position) em.components(10_000).get(0)).x(), 0.0);
+    }
+
+    @Test
+    public void testValuesFollowTheEntity() {
+        ECSEntityManager em = ECSEntityManager.create();
+        final Position pos = new Position(3, 4);
+        final Velocity vel = new Velocity(5, 6);
+        final int entityId = em.createEntity(pos, vel);
+        em.createEntity(new Position(7, 8), new Velocity(9, 10));
+
+        // moves to another composition
+        em.addComponent(entityId, new Tag());
+        Assert.assertEquals(3, pos.x(), 0.0);
+        Assert.assertEquals(6, vel.y(), 0.0);
+        pos.set(11, 12);
+
+        // the removed component keeps its values
+        em.removeComponent(entityId, Velocity.class);
+        Assert.assertEquals(5, vel.x(), 0.0);
+        vel.set(0, 0);
+        Assert.assertEquals(11, pos.x(), 0.0);
+        Assert.assertEquals(12, ((Position) em.components(entityId).get(0)).y(), 0.0);
+
+        em.removeEntity(entityId);
+        Assert.assertEquals(11, pos.x(), 0.0);
+        Assert.assertEquals(7, ((Position) em.components(entityId + 1).get(0)).x(), 0.0);
+    }
+
+    @Test
+    public void testCompaction() {
+        ECSEntityManager em = ECSEntityManager.create().compaction(0, 1);
+        MovementSystem system = new MovementSystem();
+        em.createSystem(system);
+        for (int i = 0; i < 1000; i++) {
+            em.createEntity(new Position(i, i), new Velocity(1, 1));
+        }
+        for (int i = 0; i < 1000; i += 2) {
+            em.removeEntity(i);
+        }
+        em.compact();
+        em.update();
+        for (int i = 1; i < 1000; i += 2) {
+            Assert.assertEquals(i + 1, ((Position) em.components(i).get(0)).x(), 0.0);
+        }
+    }
+
+    @Test
+    public void testBudgetedCompaction() {
+        // each tick stops after the first step of the compaction
+        ECSEntityManager em = ECSEntityManager.create().compaction(1, 0.25);
+        MovementSystem system = new MovementSystem();
+        em.createSystem(system);
+        for (int i = 0; i < 20_000; i++) {
+            em.createEntity(new Position(i, i), new Velocity(1, 1));
+        }
+        for (int i = 0; i < 20_000; i += 2) {
+            em.removeEntity(i);
+        }
+        for (int tick = 1; tick <= 20; tick++) {
+            em.update();
+            for (int i = 1; i < 20_000; i += 998) {
+                Assert.assertEquals(i + tick, ((Position) em.components(i).get(0)).x(), 0.0);
+            }
+        }
+        Assert.assertEquals(0.0, em.statistics().fragmentation().get(system.archetype()), 0.0);
+        for (int i = 1; i < 20_000; i += 2) {
+            Assert.assertEquals(i + 20, ((Position) em.components(i).get(0)).x(), 0.0);
+        }
+    }
+
+    @Test
+    public void testChunkRowsOfRemovedEntities() {
+        ECSEntityManager em = ECSEntityManager.create().compaction(0, 1);
+        for (int i = 0; i < 10; i++) {
+            em.createEntity(new Position(i, i), new Velocity(1, 1));
+        }
+        em.removeEntity(4);
+        final List<Integer> rows = new ArrayList<>();
+        em.createSystem((ECSChunkSystem) new MovementSystem() {
+            @Override
+            public void update(ECSChunk chunk) {
+                for (int i = chunk.offset(), end = i + chunk.length(); i < end; i++) {
+                    rows.add(chunk.entityId(i));
+                }
+            }
+        });
+        em.update();
+        Assert.assertEquals(Arrays.asList(0, 1, 2, 3, -1, 5, 6, 7, 8, 9), rows);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSparseArchetype() {
+        ECSEntityManager em = ECSEntityManager.create().sparse(Tag.class);
+        em.createSystem(new TaggedMovementSystem());
+    }
+
+    @Test
+    public void testColumnsMatchObjects() {
+        ECSEntityManager objects = ECSEntityManager.create().executor(ECSExecutors.callerThread());
+        objects.createSystem(new ObjectMovementSystem());
+        ECSEntityManager columns = ECSEntityManager.create().executor(ECSExecutors.callerThread());
+        columns.createSystem(new MovementSystem());
+        List<ObjectPosition> objectPositions = new ArrayList<>();
+        List<Position> columnPositions = new ArrayList<>();
+        for (int i = 0; i < 5_000; i++) {
+            ObjectPosition objectPos = new ObjectPosition(i, -i);
+            Position columnPos = new Position(i, -i);
+            objectPositions.add(objectPos);
+            columnPositions.add(columnPos);
+            objects.createEntity(objectPos, new ObjectVelocity(i % 3, 1));
+            columns.createEntity(columnPos, new Velocity(i % 3, 1));
+        }
+        for (int i = 0; i < 20; i++) {
+            objects.update();
+            columns.update();
+        }
+        for (int i = 0; i < objectPositions.size(); i++) {
+            Assert.assertEquals(objectPositions.get(i).x, columnPositions.get(i).x(), 0.0);
+            Assert.assertEquals(objectPositions.get(i).y, columnPositions.get(i).y(), 0.0);
+        }
+    }
+
+    static class Position extends ECSColumnComponent {
+
+        static final int X = 0, Y = 1;
+
+        Position(float x, float y) {
+            super(2, 0, 0);
+            set(x, y);
+        }
+
+        void set(float x, float y) {
+            setFloat(X, x);
+            setFloat(Y, y);
+        }
+
+        float x() {
+            return getFloat(X);
+        }
+
+        float y() {
+            return getFloat(Y);
+        }
+    }
+
+    static class Velocity extends ECSColumnComponent {
+
+        static final int X = 0, Y = 1;
+
+        Velocity(float x, float y) {
+            super(2, 0, 0);
+            set(x, y);
+        }
+
+        void set(float x, float y) {
+            setFloat(X, x);
+            setFloat(Y, y);
+        }
+
+        float x() {
+            return getFloat(X);
+        }
+
+        float y() {
+            return getFloat(Y);
+        }
+    }
+
+    static class Tag implements ECSComponent {
+    }
+
+    static class MovementSystem implements ECSChunkSystem {
+
+        int chunks;
+
+        @Override
+        public void update(ECSChunk chunk) {
+            final float[] x = chunk.floats(Position.class, Position.X);
+            final float[] y = chunk.floats(Position.class, Position.Y);
+            final float[] velX = chunk.floats(Velocity.class, Velocity.X);
+            final float[] velY = chunk.floats(Velocity.class, Velocity.Y);
+            for (int i = chunk.offset(), end = i + chunk.length(); i < end; i++) {
+                x[i] += velX[i];
+                y[i] += velY[i];
+            }
+            chunks++;
+        }
+
+        @Override
+        public ECSArchetype archetype() {
+            return ECSArchetype.builder().all(Position.class, Velocity.class).build();
+        }
+    }
+
+    static class TaggedMovementSystem extends MovementSystem {
+
+        @Override
+        public ECSArchetype archetype() {
+            return ECSArchetype.builder().all(Position.class, Velocity.class, Tag.class).build();
+        }
+    }
+
+    // the object based pattern of ECSTest
+    static class ObjectPosition implements ECSComponent {
+
+        float x, y;
+
+        ObjectPosition(float x, float y) {
+            this.x = x;
+            this.y = y;
+        }
+    }
+
+    static class ObjectVelocity implements ECSComponent {
+
+        float velX, velY;
+
+        ObjectVelocity(float velX, float velY) {
+            this.velX = velX;
+            this.velY = velY;
+        }
+    }
+
+    static class ObjectMovementSystem implements ECSBatchSystem {
+
+        @Override
+        public void update(ECSBatch batch) {
+            for (int i = 0; i < batch.size(); i++) {
+                update(batch.components(i));
+            }
+        }
+
+        @Override
+        public void update(List<ECSComponent> components) {
+            ObjectPosition pos = (ObjectPosition) components.get(0);
+            ObjectVelocity vel = (ObjectVelocity) components.get(1);
+            pos.x += vel.velX;
+            pos.y += vel.velY;
+        }
+
+        @Override
+        public ECSArchetype archetype() {
+            return ECSArchetype.builder().all(ObjectPosition.class, ObjectVelocity.class).build();
+        }
+    }
+
+}
@@ -0,0 +1,348 @@
+/*
+ * Copyright (C) 2019 nickscha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.github.nickscha.ecs4j;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ECSDeltaTest {
+
+    @Test
+    public void testReplication() {
+        ECSEntityManager source = world();
+        ECSEntityManager replica = world();
+        source.createSystem(new MovementSystem());
+        PositionSystem positions = new PositionSystem();
+        replica.createSystem(positions);
+
+        for (int i = 0; i < 100; i++) {
+            source.createEntity(new Position(i, 0), new Velocity(1, 2));
+        }
+        long since = source.tick();
+        for (int tick = 0; tick < 10; tick++) {
+            if (tick == 3) {
+                source.removeEntity(5);
+                source.createEntity(new Position(-1, -1));
+            }
+            source.update();
+            Assert.assertEquals(since + 1, replica.applyDelta(source.delta(since)));
+            since = source.tick();
+            replica.update();
+        }
+
+        Assert.assertEquals(100, replica.statistics().entities());
+        Assert.assertFalse(replica.hasEntity(5));
+        for (int i = 0; i < 100; i++) {
+            if (i != 5) {
+                Assert.assertEquals(new Position(i + 10, 20), positions.positions.get(i));
+            }
+        }
+        Assert.assertEquals(new Position(-1, -1), positions.positions.get(100));
+        // ids created by the replica must not collide with replicated ids
+        Assert.assertEquals(101, replica.createEntity(new Position(0, 0)));
+    }
+
+    @Test
+    public void testDeltaScalesWithChanges() {
+        ECSEntityManager source = world();
+        source.createSystem(new MovementSystem());
+        for (int i = 0; i < 10_000; i++) {
+            source.createEntity(new Position(i, i));
+        }
+        for (int i = 0; i < 10; i++) {
+            source.createEntity(new Position(0, 0), new Velocity(1, 1));
+        }
+        // the first delta spawns all entities
+        final int full = source.delta(0).length;
+        source.update();
+        final long since = source.tick();
+        source.update();
+        final byte[] delta = source.delta(since);
+        Assert.assertTrue(delta.length < full);
+
+        // header + 10 records with one position each
+        Assert.assertEquals(20 + 10 * (7 + 14 + 2), delta.length);
+
+        ECSEntityManager replica = world();
+        replica.applyDelta(source.snapshot());
+        Assert.assertEquals(10_010, replica.statistics().entities());
+    }
+
+    @Test
+    public void testWritesAreJournaledPerArchetype() {
+        ECSEntityManager source = world();
+        source.createSystem(new MovementSystem());
+        for (int i = 0; i < 10_000; i++) {
+            source.createEntity(new Position(i, i), new Velocity(1, 1));
+        }
+        source.update();
+        final long sequence = source.journalSequence();
+        source.update();
+
+        // a single marker for all written positions, expanded when read
+        Assert.assertEquals(sequence + 1, source.journalSequence());
+        Assert.assertEquals(10_000, source.changes(sequence).length);
+    }
+
+    @Test
+    public void testBudgetedWritesCoverTheSlice() {
+        ECSEntityManager source = world();
+        source.createSystem(new BudgetedMovementSystem());
+        for (int i = 0; i < 1000; i++) {
+            source.createEntity(new Position(i, i), new Velocity(1, 1));
+        }
+        source.update();
+        final long sequence = source.journalSequence();
+        source.update();
+        // entities created after the tick are not part of its writes
+        source.createEntity(new Position(0, 0), new Velocity(1, 1));
+
+        final long[] changes = source.changes(sequence);
+        // the writes of the second slice and the spawned entity
+        Assert.assertEquals(101, changes.length);
+        Assert.assertEquals(ECSJournal.key(ECSJournal.CHANGE, 100, 0), changes[0]);
+        Assert.assertEquals(ECSJournal.key(ECSJournal.CHANGE, 199, 0), changes[99]);
+        Assert.assertEquals(ECSJournal.key(ECSJournal.SPAWN, 1000, 0), changes[100]);
+
+        // the slice is kept when the list is compacted
+        for (int i = 0; i < 1000; i += 2) {
+            source.removeEntity(i);
+        }
+        source.compact();
+        int written = 0;
+        for (long change : source.changes(sequence)) {
+            if (ECSJournal.kind(change) == ECSJournal.CHANGE) {
+                final int entityId = ECSJournal.entityId(change);
+                Assert.assertTrue(entityId >= 100 && entityId < 200 && entityId % 2 == 1);
+                written++;
+            }
+        }
+        Assert.assertEquals(50, written);
+    }
+
+    @Test
+    public void testWrittenEntityLeavesArchetype() {
+        ECSEntityManager source = world();
+        ECSEntityManager replica = world();
+        source.createSystem(new MovementSystem());
+        final int entityId = source.createEntity(new Position(1, 1), new Velocity(1, 1));
+        source.update();
+        replica.applyDelta(source.delta(0));
+
+        final long since = source.tick();
+        source.update();
+        // no longer part of the archetype whose writes were journaled
+        source.removeComponent(entityId, Velocity.class);
+        source.update();
+        replica.applyDelta(source.delta(since));
+
+        Assert.assertTrue(replica.hasComponent(entityId, new Position(3, 3)));
+        Assert.assertFalse(replica.hasComponent(entityId, new Velocity(1, 1)));
+    }
+
+    @Test
+    public void testSpawnedAndDestroyedWithinDelta() {
+        ECSEntityManager source = world();
+        final long since = source.tick();
+        final int entityId = source.createEntity(new Position(1, 1));
+        source.removeEntity(entityId);
+        source.update();
+        Assert.assertEquals(20, source.delta(since).length);
+    }
+
+    @Test
+    public void testMarkChanged() {
+        ECSEntityManager source = world();
+        ECSEntityManager replica = world();
+        Position position = new Position(1, 1);
+        final int entityId = source.createEntity(position);
+        replica.applyDelta(source.delta(0));
+        source.update();
+
+        final long since = source.tick();
+        position.x = 5;
+        source.markChanged(entityId, Position.class);
+        source.addComponent(entityId, new Velocity(3, 3));
+        source.update();
+        replica.applyDelta(source.delta(since));
+
+        PositionSystem positions = new PositionSystem();
+        replica.createSystem(positions);
+        replica.update();
+        Assert.assertEquals(new Position(5, 1), positions.positions.get(entityId));
+        Assert.assertTrue(replica.hasComponent(entityId, new Velocity(3, 3)));
+    }
+
+    @Test
+    public void testRemoveComponent() {
+        ECSEntityManager source = world();
+        ECSEntityManager replica = world();
+        final int entityId = source.createEntity(new Position(1, 1), new Velocity(1, 1));
+        replica.applyDelta(source.delta(0));
+        source.update();
+
+        final long since = source.tick();
+        source.removeComponent(entityId, Velocity.class);
+        source.update();
+        replica.applyDelta(source.delta(since));
+
+        Assert.assertFalse(replica.hasComponent(entityId, new Velocity(1, 1)));
+        Assert.assertTrue(replica.hasComponent(entityId, new Position(1, 1)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRetention() {
+        ECSEntityManager source = world().deltaRetention(2);
+        source.createEntity(new Position(1, 1));
+        for (int i = 0; i < 3; i++) {
+            source.update();
+        }
+        source.delta(0);
+    }
+
+    @Test
+    public void testDeltasAfterSnapshot() {
+        ECSEntityManager source = world();
+        ECSEntityManager replica = world();
+        source.createSystem(new MovementSystem());
+        for (int i = 0; i < 1_000; i++) {
+            source.createEntity(new Position(i, i), new Velocity(1, 1));
+        }
+        replica.applyDelta(source.snapshot());
+        long since = source.tick();
+        for (int i = 0; i < 10; i++) {
+            source.update();
+            byte[] delta = source.delta(since);
+            since = source.tick();
+            replica.applyDelta(delta);
+        }
+        for (int i = 0; i < 1_000; i++) {
+            Assert.assertEquals(new Position(i + 10, i + 10), replica.components(i).get(0));
+        }
+    }
+
+    private static ECSEntityManager world() {
+        return ECSEntityManager.create()
+                .executor(ECSExecutors.callerThread())
+                .codec(Position.class,
+                        buffer -> new Position(buffer.getFloat(), buffer.getFloat()),
+                        (pos, buffer) -> buffer.putFloat(pos.x).putFloat(pos.y))
+                .codec(Velocity.class,
+                        buffer -> new Velocity(buffer.getFloat(), buffer.getFloat()),
+                        (vel, buffer) -> buffer.putFloat(vel.velX).putFloat(vel.velY));
+    }
+
+    static class Position implements ECSComponent {
+
+        float x, y;
+
+        Position(float x, float y) {
+            this.x = x;
+            this.y = y;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Position && ((Position) obj).x == x && ((Position) obj).y == y;
+        }
+
+        @Override
+        public int hashCode() {
+            return Float.hashCode(x) * 31 + Float.hashCode(y);
+        }
+
+        @Override
+        public String toString() {
+            return x + ":" + y;
+        }
+    }
+
+    static class Velocity implements ECSComponent {
+
+        float velX, velY;
+
+        Velocity(float velX, float velY) {
+            this.velX = velX;
+            this.velY = velY;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Velocity && ((Velocity) obj).velX == velX && ((Velocity) obj).velY == velY;
+        }
+
+        @Override
+        public int hashCode() {
+            return Float.hashCode(velX) * 31 + Float.hashCode(velY);
+        }
+    }
+
+    static class MovementSystem implements ECSSystem {
+
+        @Override
+        public void update(List<ECSComponent> components) {
+            Position pos = (Position) components.get(0);
+            Velocity vel = (Velocity) components.get(1);
+            pos.x += vel.velX;
+            pos.y += vel.velY;
+        }
+
+        @Override
+        public ECSArchetype archetype() {
+            return ECSArchetype.builder().all(Position.class, Velocity.class).build();
+        }
+
+        @Override
+        public List<Class<? extends ECSComponent>> writes() {
+            return Collections.singletonList(Position.class);
+        }
+    }
+
+    static class BudgetedMovementSystem extends MovementSystem {
+
+        @Override
+        public ECSBudget budget() {
+            return ECSBudget.entities(100);
+        }
+    }
+
+    static class PositionSystem implements ECSBatchSystem {
+
+        final Map<Integer, Position> positions = new HashMap<>();
+
+        @Override
+        public void update(ECSBatch batch) {
+            for (int i = 0; i < batch.size(); i++) {
+                Position pos = (Position) batch.components(i).get(0);
+                positions.put(batch.entityId(i), new Position(pos.x, pos.y));
+            }
+        }
+
+        @Override
+        public void update(List<ECSComponent> components) {
+        }
+
+        @Override
+        public ECSArchetype archetype() {
+            return ECSArchetype.builder().all(Position.class).build();
+        }
+    }
+
+}
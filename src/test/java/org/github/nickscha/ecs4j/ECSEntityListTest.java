@@ -0,0 +1,218 @@
+/*
+ * Copyright (C) 2019 nickscha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.github.nickscha.ecs4j;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ECSEntityListTest {
+
+    @Test
+    public void testRemoveLeavesHole() {
+        ECSEntityList list = new ECSEntityList();
+        for (int i = 0; i < 10; i++) {
+            list.add(i);
+        }
+        Assert.assertEquals(0.0, list.fragmentation(), 0.0);
+
+        Assert.assertTrue(list.remove(4));
+        Assert.assertFalse(list.remove(4));
+        Assert.assertFalse(list.contains(4));
+        Assert.assertTrue(list.contains(5));
+
+        Assert.assertEquals(9, list.size());
+        Assert.assertEquals(10, list.slots());
+        Assert.assertEquals(ECSEntityList.HOLE, list.get(4));
+        Assert.assertEquals(0.1, list.fragmentation(), 0.0001);
+    }
+
+    @Test
+    public void testCompact() {
+        ECSEntityList list = new ECSEntityList();
+        for (int i = 999; i >= 0; i--) {
+            list.add(i);
+        }
+        for (int i = 0; i < 1000; i += 2) {
+            list.remove(i);
+        }
+        Assert.assertTrue(list.fragmentation() > 0.5);
+        Assert.assertTrue(list.oversized());
+
+        list.compact(null);
+
+        Assert.assertEquals(500, list.size());
+        Assert.assertEquals(500, list.slots());
+        Assert.assertEquals(500, list.capacity());
+        Assert.assertEquals(0.0, list.fragmentation(), 0.0);
+        for (int i = 0; i < 500; i++) {
+            Assert.assertEquals(i * 2 + 1, list.get(i));
+        }
+    }
+
+    @Test
+    public void testIncrementalCompact() {
+        ECSEntityList list = new ECSEntityList();
+        for (int i = 0; i < 10_000; i++) {
+            list.add(i);
+        }
+        for (int i = 0; i < 10_000; i += 2) {
+            list.remove(i);
+        }
+        final int[] cursors = {5_001, 0};
+        final int[] moved = new int[1];
+        int steps = 1;
+        while (!list.compact(1_000, cursors, (entityId, slot) -> moved[0]++)) {
+            // the list stays usable between the steps
+            Assert.assertEquals(5_000 + steps - 1, list.size());
+            Assert.assertTrue(list.compacting());
+            list.add(10_000 + steps++);
+        }
+
+        // the appended entities need an extra step
+        Assert.assertEquals(11, steps);
+        Assert.assertFalse(list.compacting());
+        Assert.assertEquals(5_010, list.slots());
+        Assert.assertEquals(0, list.holes());
+        Assert.assertEquals(5_010, moved[0]);
+        // 2500 entities were before the cursor and stay before it
+        Assert.assertArrayEquals(new int[]{2_500, 0}, cursors);
+        for (int i = 0; i < 5_000; i++) {
+            Assert.assertEquals(i * 2 + 1, list.get(i));
+        }
+        Assert.assertEquals(10_010, list.get(5_009));
+    }
+
+    @Test
+    public void testEntityMapShrinksInSteps() {
+        ECSEntityMap<String> map = new ECSEntityMap<>();
+        for (int i = 0; i < 10_000; i++) {
+            map.put(i, "e" + i);
+        }
+        for (int i = 0; i < 10_000; i++) {
+            if (i % 100 != 0) {
+                map.remove(i);
+            }
+        }
+        map.shrink();
+        Assert.assertFalse(map.migrate(1_000));
+        map.put(10_000, "e10000");
+        map.put(5_000, "changed");
+        map.remove(9_000);
+        Assert.assertEquals("e200", map.get(200));
+        Assert.assertEquals("e8000", map.get(8_000));
+        Assert.assertEquals(100, map.size());
+        Assert.assertEquals(100, map.entrySet().size());
+        int entries = 0;
+        for (Map.Entry<Integer, String> entry : map.entrySet()) {
+            Assert.assertEquals(entry.getValue(), map.get(entry.getKey()));
+            entries++;
+        }
+        Assert.assertEquals(100, entries);
+
+        while (!map.migrate(1_000)) {
+            Assert.assertTrue(map.shrinking());
+        }
+        Assert.assertFalse(map.shrinking());
+        Assert.assertEquals(100, map.size());
+        Assert.assertEquals("changed", map.get(5_000));
+        Assert.assertNull(map.get(9_000));
+        Assert.assertTrue(map.containsKey(10_000));
+    }
+
+    @Test
+    public void testCompactWithOrder() {
+        ECSEntityList list = new ECSEntityList();
+        for (int i = 0; i < 100; i++) {
+            list.add(i);
+        }
+        list.compact(Comparator.reverseOrder());
+        Assert.assertEquals(99, list.get(0));
+        Assert.assertEquals(0, list.get(99));
+
+        // appending breaks a user defined order
+        list.add(100);
+        Assert.assertTrue(list.fragmentation() > 0);
+        Assert.assertTrue(list.contains(100));
+    }
+
+    @Test
+    public void testAutomaticCompaction() {
+        ECSEntityManager em = ECSEntityManager.create().compaction(Long.MAX_VALUE, 0.25);
+        em.createSystem(new PositionSystem());
+        ECSArchetype archetype = new PositionSystem().archetype();
+
+        List<Integer> entityIds = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            entityIds.add(em.createEntity(new Position(i)));
+        }
+        for (int i = 0; i < 1000; i += 3) {
+            em.removeEntity(entityIds.get(i));
+        }
+        Assert.assertTrue(em.statistics().fragmentation().get(archetype) > 0.25);
+
+        em.update();
+
+        Assert.assertEquals(0.0, em.statistics().fragmentation().get(archetype), 0.0);
+        Assert.assertEquals(666, em.statistics().entities());
+    }
+
+    @Test
+    public void testOrder() {
+        ECSEntityManager em = ECSEntityManager.create().executor(ECSExecutors.callerThread());
+        PositionSystem system = new PositionSystem();
+        em.createSystem(system);
+        for (int i = 0; i < 10; i++) {
+            em.createEntity(new Position(i));
+        }
+
+        em.order(system.archetype(), Comparator.comparing(e -> -((Position) e.get(0)).x));
+        em.update();
+
+        Assert.assertEquals(10, system.visited.size());
+        for (int i = 0; i < 10; i++) {
+            Assert.assertEquals(9 - i, system.visited.get(i).x, 0.0);
+        }
+    }
+
+    static class Position implements ECSComponent {
+
+        final float x;
+
+        Position(float x) {
+            this.x = x;
+        }
+    }
+
+    static class PositionSystem implements ECSSystem {
+
+        final List<Position> visited = new ArrayList<>();
+
+        @Override
+        public void update(List<ECSComponent> components) {
+            visited.add((Position) components.get(0));
+        }
+
+        @Override
+        public ECSArchetype archetype() {
+            return ECSArchetype.builder().all(Position.class).build();
+        }
+    }
+
+}
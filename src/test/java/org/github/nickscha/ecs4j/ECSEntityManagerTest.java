@@ -15,7 +15,9 @@
  */
 package org.github.nickscha.ecs4j;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -54,6 +56,152 @@ public class ECSEntityManagerTest {
         Assert.assertFalse(em.hasEntity(carId));
     }
 
+    @Test
+    public void testAddComponentUpdatesArchetypes() {
+        ECSEntityManager em = ECSEntityManager.create().executor(ECSExecutors.callerThread());
+        CountingSystem moving = new CountingSystem(ECSArchetype.builder().all(Position.class, Velocity.class).build());
+        CountingSystem resting = new CountingSystem2(ECSArchetype.builder().all(Position.class).none(Velocity.class).build());
+        em.createSystem(moving);
+        em.createSystem(resting);
+
+        int entityId = em.createEntity(new ArrayList<>());
+        em.addComponent(entityId, new Position());
+        em.update();
+        Assert.assertEquals(0, moving.count);
+        Assert.assertEquals(1, resting.count);
+
+        em.addComponent(entityId, new Velocity());
+        em.update();
+        Assert.assertEquals(1, moving.count);
+        Assert.assertEquals(1, resting.count);
+    }
+
+    @Test
+    public void testLateSystemRegistration() {
+        ECSEntityManager em = ECSEntityManager.create().executor(ECSExecutors.callerThread());
+        for (int i = 0; i < 100_000; i++) {
+            em.createEntity(new Position());
+        }
+        em.createEntity(new Position(), new Velocity());
+        em.createEntity(new Velocity(), new Marker0());
+        em.createEntity(new Velocity(), new Marker1());
+        em.createEntity(new Velocity(), new Marker2());
+
+        // systems over a component which only few entities have, excluding
+        // different markers
+        final ECSArchetype velocities = ECSArchetype.builder().all(Velocity.class).build();
+        final ECSArchetype unmarked = ECSArchetype.builder().all(Velocity.class).none(Marker0.class).build();
+        final ECSArchetype rare = ECSArchetype.builder().all(Velocity.class).none(Marker0.class, Marker1.class).build();
+        em.createSystem(new CountingSystem(velocities));
+        em.createSystem(new CountingSystem2(unmarked));
+        em.createSystem(new CountingSystem3(rare));
+
+        final Map<ECSArchetype, ECSStatistics.Footprint> footprints = em.statistics().archetypes();
+        Assert.assertEquals(4, footprints.get(velocities).entities());
+        Assert.assertEquals(3, footprints.get(unmarked).entities());
+        Assert.assertEquals(2, footprints.get(rare).entities());
+        Assert.assertEquals(3, em.statistics().systems());
+
+        CountingSystem system = new CountingSystem4(ECSArchetype.builder().all(Velocity.class, Position.class).build());
+        em.createSystem(system);
+        em.update();
+        Assert.assertEquals(1, system.count);
+    }
+
+    @Test
+    public void testRemoveSystem() {
+        ECSEntityManager em = ECSEntityManager.create().executor(ECSExecutors.callerThread());
+        ECSArchetype moving = ECSArchetype.builder().all(Position.class, Velocity.class).build();
+        CountingSystem system = new CountingSystem(moving);
+        em.createSystem(system);
+        em.createEntity(new Position(), new Velocity());
+
+        Assert.assertTrue(em.removeSystem(CountingSystem.class));
+        Assert.assertFalse(em.removeSystem(CountingSystem.class));
+        Assert.assertFalse(em.hasSystem(CountingSystem.class));
+        Assert.assertFalse(em.statistics().archetypes().containsKey(moving));
+        em.update();
+        Assert.assertEquals(0, system.count);
+
+        // the membership is rebuilt including the entities created in between
+        em.createEntity(new Position(), new Velocity());
+        em.createSystem(system);
+        em.update();
+        Assert.assertEquals(2, system.count);
+    }
+
+    @Test
+    public void testSharedArchetypeIsKept() {
+        ECSEntityManager em = ECSEntityManager.create().executor(ECSExecutors.callerThread());
+        ECSArchetype moving = ECSArchetype.builder().all(Position.class, Velocity.class).build();
+        CountingSystem first = new CountingSystem(moving);
+        CountingSystem second = new CountingSystem2(moving);
+        em.createSystem(first);
+        em.createSystem(second);
+        em.createEntity(new Position(), new Velocity());
+
+        em.removeSystem(CountingSystem.class);
+        em.createEntity(new Position(), new Velocity());
+        em.update();
+        Assert.assertEquals(2, second.count);
+        Assert.assertTrue(em.statistics().archetypes().containsKey(moving));
+    }
+
+    @Test
+    public void testDisableSystem() {
+        ECSEntityManager em = ECSEntityManager.create().executor(ECSExecutors.callerThread());
+        CountingSystem system = new CountingSystem(ECSArchetype.builder().all(Position.class).build());
+        em.createSystem(system);
+        em.createEntity(new Position());
+
+        em.disableSystem(CountingSystem.class);
+        Assert.assertFalse(em.isSystemEnabled(CountingSystem.class));
+        em.createEntity(new Position());
+        em.update();
+        Assert.assertEquals(0, system.count);
+
+        em.enableSystem(CountingSystem.class);
+        Assert.assertTrue(em.isSystemEnabled(CountingSystem.class));
+        em.update();
+        Assert.assertEquals(2, system.count);
+    }
+
+    @Test
+    public void testReplaceSystem() {
+        ECSEntityManager em = ECSEntityManager.create().executor(ECSExecutors.callerThread());
+        ECSArchetype positions = ECSArchetype.builder().all(Position.class).build();
+        ECSArchetype moving = ECSArchetype.builder().all(Position.class, Velocity.class).build();
+        em.createSystem(new CountingSystem(positions));
+        em.createEntity(new Position(), new Velocity());
+
+        CountingSystem replacement = new CountingSystem2(positions);
+        em.replaceSystem(CountingSystem.class, replacement);
+        Assert.assertFalse(em.hasSystem(CountingSystem.class));
+        em.update();
+        Assert.assertEquals(1, replacement.count);
+
+        // a new archetype of the same system class drops the previous one
+        em.createSystem(new CountingSystem2(moving));
+        Assert.assertFalse(em.statistics().archetypes().containsKey(positions));
+        Assert.assertTrue(em.statistics().archetypes().containsKey(moving));
+    }
+
+    @Test
+    public void testHotSwapCycles() {
+        ECSEntityManager em = ECSEntityManager.create().executor(ECSExecutors.callerThread());
+        for (int i = 0; i < 1000; i++) {
+            em.createEntity(new Position(), new Velocity());
+        }
+        ECSArchetype moving = ECSArchetype.builder().all(Position.class, Velocity.class).build();
+        for (int i = 0; i < 10; i++) {
+            em.createSystem(new CountingSystem(ECSArchetype.builder().all(Position.class).any(Velocity.class).build()));
+            em.replaceSystem(CountingSystem.class, new CountingSystem2(moving));
+            Assert.assertEquals(1000, em.statistics().archetypes().get(moving).entities());
+            em.removeSystem(CountingSystem2.class);
+        }
+        Assert.assertTrue(em.statistics().archetypes().isEmpty());
+    }
+
     class Position implements ECSComponent {
 
         public float x, y;
@@ -64,6 +212,56 @@ public class ECSEntityManagerTest {
         public float velX, velY;
     }
 
+    static class Marker0 implements ECSComponent {
+    }
+
+    static class Marker1 implements ECSComponent {
+    }
+
+    static class Marker2 implements ECSComponent {
+    }
+
+    class CountingSystem implements ECSSystem {
+
+        private final ECSArchetype archetype;
+        private int count;
+
+        CountingSystem(ECSArchetype archetype) {
+            this.archetype = archetype;
+        }
+
+        @Override
+        public void update(List<ECSComponent> components) {
+            count++;
+        }
+
+        @Override
+        public ECSArchetype archetype() {
+            return archetype;
+        }
+    }
+
+    class CountingSystem2 extends CountingSystem {
+
+        CountingSystem2(ECSArchetype archetype) {
+            super(archetype);
+        }
+    }
+
+    class CountingSystem3 extends CountingSystem {
+
+        CountingSystem3(ECSArchetype archetype) {
+            super(archetype);
+        }
+    }
+
+    class CountingSystem4 extends CountingSystem {
+
+        CountingSystem4(ECSArchetype archetype) {
+            super(archetype);
+        }
+    }
+
     class MovementSystem implements ECSSystem {
 
         @Override
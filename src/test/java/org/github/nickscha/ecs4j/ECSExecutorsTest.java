@@ -0,0 +1,174 @@
+/*
+ * Copyright (C) 2019 nickscha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.github.nickscha.ecs4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+
+public class ECSExecutorsTest {
+
+    private static final int ITERATIONS = 100;
+    private static final int ENTITIES = 16;
+
+    private final AtomicLong counter = new AtomicLong(0);
+
+    @Test
+    public void testCommonPool() {
+        run(ECSExecutors.commonPool());
+    }
+
+    @Test
+    public void testForkJoin() {
+        final ExecutorService executor = ECSExecutors.forkJoin(4);
+        try {
+            run(executor);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testFixed() {
+        final ExecutorService executor = ECSExecutors.fixed(4);
+        try {
+            run(executor);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testCallerThread() {
+        run(ECSExecutors.callerThread());
+    }
+
+    @Test
+    public void testVirtualThreads() {
+        final ExecutorService executor;
+        try {
+            executor = ECSExecutors.virtualThreads();
+        } catch (UnsupportedOperationException ex) {
+            // requires Java 21
+            Assume.assumeNoException(ex);
+            return;
+        }
+        try {
+            run(executor);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testCallerThreadIsDeterministic() {
+        final List<String> order = new ArrayList<>();
+        final String caller = Thread.currentThread().getName();
+
+        ECSEntityManager em = ECSEntityManager.create().executor(ECSExecutors.callerThread());
+        em.createSystem(new RecordingSystem(order, "a"));
+        em.createSystem(new RecordingSystem2(order, "b"));
+        em.createEntity(new Position());
+
+        em.update();
+        em.update();
+
+        Assert.assertEquals(4, order.size());
+        Assert.assertEquals(order.subList(0, 2), order.subList(2, 4));
+        Assert.assertTrue(order.stream().allMatch(e -> e.endsWith(caller)));
+    }
+
+    /**
+     * Runs several systems per tick on the backend, each system has to visit
+     * every entity exactly once per tick.
+     */
+    private void run(Executor executor) {
+        counter.set(0);
+        ECSEntityManager em = ECSEntityManager.create().executor(executor);
+        em.createSystem(new CountingSystem());
+        em.createSystem(new CountingSystem2());
+        em.createSystem(new CountingSystem3());
+        em.createSystem(new CountingSystem4());
+        for (int i = 0; i < ENTITIES; i++) {
+            em.createEntity(new Position());
+        }
+
+        for (int i = 0; i < ITERATIONS; i++) {
+            em.update();
+        }
+
+        Assert.assertEquals(4L * ENTITIES * ITERATIONS, counter.get());
+    }
+
+    class Position implements ECSComponent {
+    }
+
+    class CountingSystem implements ECSSystem {
+
+        @Override
+        public void update(List<ECSComponent> components) {
+            counter.incrementAndGet();
+        }
+
+        @Override
+        public ECSArchetype archetype() {
+            return ECSArchetype.builder().all(Position.class).build();
+        }
+    }
+
+    class CountingSystem2 extends CountingSystem {
+    }
+
+    class CountingSystem3 extends CountingSystem {
+    }
+
+    class CountingSystem4 extends CountingSystem {
+    }
+
+    class RecordingSystem implements ECSSystem {
+
+        private final List<String> order;
+        private final String name;
+
+        RecordingSystem(List<String> order, String name) {
+            this.order = order;
+            this.name = name;
+        }
+
+        @Override
+        public void update(List<ECSComponent> components) {
+            order.add(name + "@" + Thread.currentThread().getName());
+        }
+
+        @Override
+        public ECSArchetype archetype() {
+            return ECSArchetype.builder().all(Position.class).build();
+        }
+    }
+
+    class RecordingSystem2 extends RecordingSystem {
+
+        RecordingSystem2(List<String> order, String name) {
+            super(order, name);
+        }
+    }
+
+}
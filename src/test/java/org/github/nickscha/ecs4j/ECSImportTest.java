@@ -0,0 +1,203 @@
+/*
+ * Copyright (C) 2019 nickscha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.github.nickscha.ecs4j;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ECSImportTest {
+
+    private static final int ENTITIES = 10_000;
+
+    @Test
+    public void testCsv() throws IOException {
+        testCsv(1);
+    }
+
+    @Test
+    public void testCsvParallel() throws IOException {
+        testCsv(4);
+    }
+
+    @Test
+    public void testBinary() throws IOException {
+        testBinary(1);
+    }
+
+    @Test
+    public void testBinaryParallel() throws IOException {
+        testBinary(4);
+    }
+
+    @Test(expected = IOException.class)
+    public void testTruncatedRecord() throws IOException {
+        Path file = Files.createTempFile("ecs4j", ".bin");
+        try {
+            Files.write(file, new byte[]{1, 2, 3, 4, 5, 6});
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                ECSImport.builder()
+                        .binary(4)
+                        .codec(buffer -> new Position(buffer.getFloat(), 0))
+                        .build()
+                        .run(channel, ECSEntityManager.create());
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    private void testCsv(int parallelism) throws IOException {
+        StringBuilder sb = new StringBuilder("x,velX\r\n");
+        for (int i = 0; i < ENTITIES; i++) {
+            sb.append(i).append(',').append(i * 2).append("\r\n");
+        }
+        Path file = Files.createTempFile("ecs4j", ".csv");
+        try {
+            Files.write(file, sb.toString().getBytes(StandardCharsets.UTF_8));
+            ECSImport csv = ECSImport.builder()
+                    .csv(',', true)
+                    .codec(buffer -> new Position(Float.parseFloat(ECSComponentCodec.text(buffer)), 0))
+                    .codec(buffer -> new Velocity(Float.parseFloat(ECSComponentCodec.text(buffer)), 0))
+                    .chunkSize(1024)
+                    .batchSize(100)
+                    .parallelism(parallelism)
+                    .build();
+            assertImport(file, csv);
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    private void testBinary(int parallelism) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(ENTITIES * 8);
+        for (int i = 0; i < ENTITIES; i++) {
+            buffer.putFloat(i).putFloat(i * 2);
+        }
+        Path file = Files.createTempFile("ecs4j", ".bin");
+        try {
+            Files.write(file, buffer.array());
+            ECSImport binary = ECSImport.builder()
+                    .binary(8)
+                    .codec(e -> new Position(e.getFloat(), 0), e -> new Velocity(e.getFloat(), 0))
+                    .chunkSize(1000)
+                    .batchSize(100)
+                    .parallelism(parallelism)
+                    .build();
+            assertImport(file, binary);
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    private void assertImport(Path file, ECSImport ecsImport) throws IOException {
+        ECSEntityManager em = ECSEntityManager.create().executor(ECSExecutors.callerThread());
+        SumSystem system = new SumSystem();
+        em.createSystem(system);
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            Assert.assertEquals(ENTITIES, ecsImport.run(channel, em));
+        }
+        em.update();
+
+        Assert.assertEquals(ENTITIES, em.statistics().entities());
+        Assert.assertEquals(ENTITIES, system.count);
+        // sum of i and of 2 * i
+        Assert.assertEquals((double) ENTITIES * (ENTITIES - 1) / 2, system.sumX, 0.0);
+        Assert.assertEquals((double) ENTITIES * (ENTITIES - 1), system.sumVelX, 0.0);
+    }
+
+    @Test
+    public void testProgress() throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(ENTITIES * 4);
+        for (int i = 0; i < ENTITIES; i++) {
+            buffer.putFloat(i);
+        }
+        Path file = Files.createTempFile("ecs4j", ".bin");
+        try {
+            Files.write(file, buffer.array());
+            AtomicLong lastBytes = new AtomicLong();
+            AtomicLong lastEntities = new AtomicLong();
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                ECSImport.builder()
+                        .binary(4)
+                        .codec(e -> new Position(e.getFloat(), 0))
+                        .batchSize(1000)
+                        .progress((bytes, total, entities) -> {
+                            Assert.assertEquals(ENTITIES * 4, total);
+                            Assert.assertTrue(bytes >= lastBytes.get());
+                            Assert.assertTrue(entities > lastEntities.get());
+                            lastBytes.set(bytes);
+                            lastEntities.set(entities);
+                        })
+                        .build()
+                        .run(channel, ECSEntityManager.create());
+            }
+            Assert.assertEquals(ENTITIES, lastEntities.get());
+            Assert.assertEquals(ENTITIES * 4, lastBytes.get());
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    static class Position implements ECSComponent {
+
+        final float x, y;
+
+        Position(float x, float y) {
+            this.x = x;
+            this.y = y;
+        }
+    }
+
+    static class Velocity implements ECSComponent {
+
+        final float velX, velY;
+
+        Velocity(float velX, float velY) {
+            this.velX = velX;
+            this.velY = velY;
+        }
+    }
+
+    static class SumSystem implements ECSSystem {
+
+        int count;
+        double sumX;
+        double sumVelX;
+
+        @Override
+        public void update(List<ECSComponent> components) {
+            count++;
+            sumX += ((Position) components.get(0)).x;
+            sumVelX += ((Velocity) components.get(1)).velX;
+        }
+
+        @Override
+        public ECSArchetype archetype() {
+            return ECSArchetype.builder().all(Position.class, Velocity.class).build();
+        }
+    }
+
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2019 nickscha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.github.nickscha.ecs4j;
+
+import java.util.List;
+import java.util.OptionalInt;
+import java.util.PrimitiveIterator;
+import java.util.Spliterator;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ECSQueryTest {
+
+    private static final ECSArchetype POSITIONS = ECSArchetype.builder().all(Position.class).build();
+
+    @Test
+    public void testFindFirst() {
+        ECSEntityManager em = world(10_000);
+        CountingFilter filter = new CountingFilter(100);
+        OptionalInt entityId = em.query(POSITIONS).filter(filter).findFirst();
+
+        Assert.assertEquals(OptionalInt.of(100), entityId);
+        // stops at the first match
+        Assert.assertEquals(101, filter.calls);
+        Assert.assertFalse(em.query(POSITIONS).filter(new CountingFilter(-1)).findFirst().isPresent());
+    }
+
+    @Test
+    public void testUnregisteredArchetype() {
+        ECSEntityManager em = world(1000);
+        for (int i = 0; i < 500; i++) {
+            em.createEntity(new Position(i));
+        }
+        em.removeEntity(3);
+
+        Assert.assertEquals(1499, em.query(POSITIONS).count());
+        Assert.assertEquals(999, em.query(ECSArchetype.builder().all(Position.class, Velocity.class).build()).count());
+        Assert.assertEquals(500, em.query(ECSArchetype.builder().all(Position.class).none(Velocity.class).build()).count());
+        Assert.assertEquals(0, em.query(ECSArchetype.builder().all(Unused.class).build()).count());
+    }
+
+    @Test
+    public void testRegisteredArchetype() {
+        ECSEntityManager em = world(1000);
+        em.createSystem(new MovementSystem());
+        em.removeEntity(0);
+
+        PrimitiveIterator.OfInt iterator = em.query(new MovementSystem().archetype()).iterator();
+        Assert.assertEquals(1, iterator.nextInt());
+        Assert.assertEquals(2, iterator.nextInt());
+        Assert.assertEquals(999, em.query(new MovementSystem().archetype()).stream().limit(2000).count());
+    }
+
+    @Test
+    public void testSparseArchetype() {
+        ECSEntityManager em = ECSEntityManager.create().sparse(Unused.class);
+        for (int i = 0; i < 100; i++) {
+            em.createEntity(new Position(i));
+        }
+        em.addComponent(50, new Unused());
+
+        Assert.assertEquals(OptionalInt.of(50), em.query(ECSArchetype.builder().all(Position.class, Unused.class).build()).findFirst());
+        Assert.assertEquals(99, em.query(ECSArchetype.builder().all(Position.class).none(Unused.class).build()).count());
+    }
+
+    @Test
+    public void testSpliteratorSplitsAtChunks() {
+        ECSEntityManager em = world(10_000);
+        Spliterator.OfInt spliterator = em.query(POSITIONS).spliterator();
+        Spliterator.OfInt prefix = spliterator.trySplit();
+
+        Assert.assertEquals(0, prefix.estimateSize() % ECSBatch.CAPACITY);
+        Assert.assertEquals(10_000, prefix.estimateSize() + spliterator.estimateSize());
+    }
+
+    @Test
+    public void testParallelStream() {
+        ECSEntityManager em = world(100_000);
+        double sequential = em.query(POSITIONS).stream().mapToDouble(e -> ((Position) e.get(0)).x).sum();
+        double parallel = em.query(POSITIONS).parallelStream().mapToDouble(e -> ((Position) e.get(0)).x).sum();
+        Assert.assertEquals(sequential, parallel, 0.0);
+        Assert.assertEquals(100_000, em.query(POSITIONS).entityIds().parallel().boxed().collect(Collectors.toSet()).size());
+    }
+
+    private static ECSEntityManager world(int entities) {
+        ECSEntityManager em = ECSEntityManager.create();
+        for (int i = 0; i < entities; i++) {
+            em.createEntity(new Position(i), new Velocity());
+        }
+        return em;
+    }
+
+    static class CountingFilter implements Predicate<List<ECSComponent>> {
+
+        final float x;
+        int calls;
+
+        CountingFilter(float x) {
+            this.x = x;
+        }
+
+        @Override
+        public boolean test(List<ECSComponent> components) {
+            calls++;
+            return ((Position) components.get(0)).x == x;
+        }
+    }
+
+    static class Position implements ECSComponent {
+
+        float x, y;
+
+        Position(float x) {
+            this.x = x;
+        }
+    }
+
+    static class Velocity implements ECSComponent {
+
+        float velX, velY;
+    }
+
+    static class Unused implements ECSComponent {
+    }
+
+    static class MovementSystem implements ECSSystem {
+
+        @Override
+        public void update(List<ECSComponent> components) {
+        }
+
+        @Override
+        public ECSArchetype archetype() {
+            return ECSArchetype.builder().all(Position.class, Velocity.class).build();
+        }
+    }
+
+}
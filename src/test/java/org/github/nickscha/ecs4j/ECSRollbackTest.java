@@ -0,0 +1,247 @@
+/*
+ * Copyright (C) 2019 nickscha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.github.nickscha.ecs4j;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ECSRollbackTest {
+
+    private static final ECSArchetype POSITIONS = ECSArchetype.builder().all(Position.class).build();
+
+    @Test
+    public void testRestoreAndResimulate() {
+        ECSEntityManager em = world();
+        em.createSystem(new MovementSystem());
+        for (int i = 0; i < 1000; i++) {
+            em.createEntity(new Position(i, 0), new Velocity(1, 1));
+        }
+        ECSRollback rollback = em.rollback(10);
+        List<Map<Integer, String>> history = new ArrayList<>();
+        for (int frame = 0; frame < 10; frame++) {
+            em.update();
+            rollback.save(frame);
+            history.add(positions(em));
+        }
+
+        rollback.restore(5);
+        Assert.assertEquals(history.get(5), positions(em));
+        Assert.assertEquals(6, rollback.size());
+        Assert.assertFalse(rollback.contains(6));
+
+        for (int frame = 6; frame < 10; frame++) {
+            em.update();
+            rollback.save(frame);
+        }
+        Assert.assertEquals(history.get(9), positions(em));
+    }
+
+    @Test
+    public void testRestoreSpawnedAndDestroyed() {
+        ECSEntityManager em = world();
+        ECSEntityManager replica = world();
+        for (int i = 0; i < 600; i++) {
+            em.createEntity(new Position(i, i));
+        }
+        em.update();
+        ECSRollback rollback = em.rollback(4);
+        rollback.save(0);
+        final Map<Integer, String> saved = positions(em);
+        replica.applyDelta(em.snapshot());
+
+        long since = em.tick();
+        em.removeEntity(300);
+        final int spawned = em.createEntity(new Position(-1, -1));
+        em.update();
+        rollback.save(1);
+        replica.applyDelta(em.delta(since));
+        Assert.assertFalse(replica.hasEntity(300));
+
+        since = em.tick();
+        rollback.restore(0);
+        Assert.assertEquals(saved, positions(em));
+        Assert.assertTrue(em.hasEntity(300));
+        Assert.assertFalse(em.hasEntity(spawned));
+
+        // the restored entity is replicated like a spawned one
+        em.update();
+        replica.applyDelta(em.delta(since));
+        Assert.assertEquals(saved, positions(replica));
+    }
+
+    @Test
+    public void testRestoreChangedComponents() {
+        ECSEntityManager em = world();
+        MovementSystem system = new MovementSystem();
+        em.createSystem(system);
+        final int standing = em.createEntity(new Position(0, 0));
+        final int moving = em.createEntity(new Position(0, 0), new Velocity(1, 1));
+        em.update();
+        ECSRollback rollback = em.rollback(4);
+        rollback.save(0);
+
+        em.addComponent(standing, new Velocity(2, 2));
+        em.removeComponent(moving, Velocity.class);
+        em.update();
+        rollback.save(1);
+
+        rollback.restore(0);
+        Assert.assertEquals(1, em.components(standing).size());
+        Assert.assertEquals(2, em.components(moving).size());
+        Assert.assertTrue(em.components(moving).get(1) instanceof Velocity);
+        em.update();
+        Assert.assertEquals("0.0:0.0", em.components(standing).get(0).toString());
+        Assert.assertEquals("2.0:2.0", em.components(moving).get(0).toString());
+    }
+
+    @Test
+    public void testPagesAreShared() {
+        ECSEntityManager em = world();
+        em.createSystem(new MovementSystem());
+        for (int i = 0; i < 10_000; i++) {
+            em.createEntity(new Position(i, i));
+        }
+        for (int i = 0; i < 10; i++) {
+            em.createEntity(new Position(0, 0), new Velocity(1, 1));
+        }
+        ECSRollback rollback = em.rollback(10);
+        rollback.save(0);
+        final long full = rollback.bytes();
+        for (int frame = 1; frame < 10; frame++) {
+            em.update();
+            rollback.save(frame);
+        }
+        // only the page of the moving entities is encoded again
+        Assert.assertTrue(rollback.bytes() < full * 2);
+    }
+
+    @Test
+    public void testRingDropsOldestFrame() {
+        ECSEntityManager em = world();
+        em.createEntity(new Position(1, 1));
+        ECSRollback rollback = em.rollback(3);
+        for (int frame = 0; frame < 5; frame++) {
+            rollback.save(frame);
+        }
+        Assert.assertEquals(3, rollback.size());
+        Assert.assertEquals(4, rollback.newestFrame());
+        Assert.assertFalse(rollback.contains(1));
+        Assert.assertTrue(rollback.contains(2));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRestoreUnknownFrame() {
+        ECSEntityManager em = world();
+        ECSRollback rollback = em.rollback(3);
+        rollback.save(0);
+        rollback.restore(1);
+    }
+
+    @Test
+    public void testResimulationIsDeterministic() {
+        ECSEntityManager em = world();
+        em.createSystem(new MovementSystem());
+        for (int i = 0; i < 1_000; i++) {
+            em.createEntity(new Position(i, i));
+        }
+        for (int i = 0; i < 100; i++) {
+            em.createEntity(new Position(0, 0), new Velocity(1, 1));
+        }
+        ECSRollback rollback = em.rollback(10);
+        for (int frame = 0; frame < 10; frame++) {
+            em.update();
+            rollback.save(frame);
+        }
+        final Map<Integer, String> expected = positions(em);
+        for (int i = 0; i < 3; i++) {
+            rollback.restore(4);
+            for (int frame = 5; frame < 10; frame++) {
+                em.update();
+                rollback.save(frame);
+            }
+            Assert.assertEquals(expected, positions(em));
+        }
+    }
+
+    private static Map<Integer, String> positions(ECSEntityManager em) {
+        final Map<Integer, String> positions = new HashMap<>();
+        em.query(POSITIONS).forEach((components, entityId) -> positions.put(entityId, components.get(0).toString()));
+        return positions;
+    }
+
+    private static ECSEntityManager world() {
+        return ECSEntityManager.create()
+                .executor(ECSExecutors.callerThread())
+                .codec(Position.class,
+                        buffer -> new Position(buffer.getFloat(), buffer.getFloat()),
+                        (pos, buffer) -> buffer.putFloat(pos.x).putFloat(pos.y))
+                .codec(Velocity.class,
+                        buffer -> new Velocity(buffer.getFloat(), buffer.getFloat()),
+                        (vel, buffer) -> buffer.putFloat(vel.velX).putFloat(vel.velY));
+    }
+
+    static class Position implements ECSComponent {
+
+        float x, y;
+
+        Position(float x, float y) {
+            this.x = x;
+            this.y = y;
+        }
+
+        @Override
+        public String toString() {
+            return x + ":" + y;
+        }
+    }
+
+    static class Velocity implements ECSComponent {
+
+        float velX, velY;
+
+        Velocity(float velX, float velY) {
+            this.velX = velX;
+            this.velY = velY;
+        }
+    }
+
+    static class MovementSystem implements ECSSystem {
+
+        @Override
+        public void update(List<ECSComponent> components) {
+            Position pos = (Position) components.get(0);
+            Velocity vel = (Velocity) components.get(1);
+            pos.x += vel.velX;
+            pos.y += vel.velY;
+        }
+
+        @Override
+        public ECSArchetype archetype() {
+            return ECSArchetype.builder().all(Position.class, Velocity.class).build();
+        }
+
+        @Override
+        public List<Class<? extends ECSComponent>> writes() {
+            return Collections.singletonList(Position.class);
+        }
+    }
+
+}
@@ -0,0 +1,220 @@
+/*
+ * Copyright (C) 2019 nickscha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.github.nickscha.ecs4j;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ECSShardsTest {
+
+    private static final ECSArchetype POSITIONS = ECSArchetype.builder().all(Position.class).build();
+
+    @Test
+    public void testEntityIdsAreUnique() {
+        try (ECSShards shards = shards(4, null)) {
+            Set<Integer> entityIds = new HashSet<>();
+            for (int i = 0; i < 1000; i++) {
+                Assert.assertTrue(entityIds.add(shards.createEntity(new Position(i, 0))));
+            }
+            shards.partition(3).createEntity(new Position(0, 0));
+            Assert.assertEquals(300, shards.partition(0).query(POSITIONS).count());
+            Assert.assertEquals(201, shards.partition(3).query(POSITIONS).count());
+            Assert.assertEquals(3, shards.partitionOf(1000));
+        }
+    }
+
+    @Test
+    public void testMigration() {
+        try (ECSShards shards = shards(4, null)) {
+            final int entityId = shards.createEntity(new Position(50, 0), new Velocity(25, 0));
+            Assert.assertEquals(0, shards.partitionOf(entityId));
+
+            shards.update();
+            Assert.assertEquals(0, shards.partitionOf(entityId));
+            shards.update();
+            Assert.assertEquals(1, shards.partitionOf(entityId));
+            Assert.assertEquals(1, shards.migrated());
+            Assert.assertEquals(0, shards.partition(0).query(POSITIONS).count());
+
+            // the systems of the new partition continue to move the entity
+            shards.update();
+            Assert.assertEquals(125, ((Position) shards.components(entityId).get(0)).x, 0.0);
+        }
+    }
+
+    @Test
+    public void testOnlyWrittenEntitiesAreKeyed() {
+        try (ECSShards shards = ECSShards.builder()
+                .partitions(4)
+                .key(components -> (int) ((Position) components.get(0)).x / 100, Position.class)
+                .system(MovementSystem::new)
+                .build()) {
+            final int moving = shards.createEntity(new Position(90, 0), new Velocity(10, 0));
+            // not written by a system, so the key is not evaluated again
+            final int placed = shards.partition(3).createEntity(new Position(0, 0));
+
+            shards.update();
+            Assert.assertEquals(1, shards.partitionOf(moving));
+            Assert.assertEquals(3, shards.partitionOf(placed));
+            Assert.assertEquals(1, shards.migrated());
+        }
+    }
+
+    @Test
+    public void testMigratedEntityIsRemovable() {
+        try (ECSShards shards = shards(2, null)) {
+            final int entityId = shards.createEntity(new Position(99, 0), new Velocity(1, 0));
+            shards.update();
+            Assert.assertEquals(1, shards.partitionOf(entityId));
+            Assert.assertTrue(shards.removeEntity(entityId));
+            Assert.assertFalse(shards.hasEntity(entityId));
+            Assert.assertNull(shards.components(entityId));
+        }
+    }
+
+    @Test
+    public void testCrossPartitionLookup() {
+        final ECSShards[] ref = new ECSShards[1];
+        try (ECSShards shards = shards(4, ref)) {
+            final int leader = shards.createEntity(new Position(0, 0), new Velocity(1, 1));
+            final int follower = shards.createEntity(new Position(350, 0), new Follower(leader));
+            for (int i = 0; i < 10; i++) {
+                shards.update();
+            }
+            Assert.assertEquals(0, shards.partitionOf(leader));
+            Assert.assertEquals(3, shards.partitionOf(follower));
+            // the leader is read before or after its move in the same tick
+            final float y = ((Position) shards.components(follower).get(0)).y;
+            Assert.assertTrue(y == 9 || y == 10);
+        }
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testLookupIsReadOnly() {
+        try (ECSShards shards = shards(2, null)) {
+            final int entityId = shards.createEntity(new Position(0, 0));
+            shards.components(entityId).clear();
+        }
+    }
+
+    @Test
+    public void testPartitionsAgree() {
+        try (ECSShards single = shards(1, null); ECSShards sharded = shards(4, null)) {
+            for (int i = 0; i < 4_000; i++) {
+                Assert.assertEquals(single.createEntity(new Position(i % 400, 0), new Velocity(0.5f, 0)),
+                        sharded.createEntity(new Position(i % 400, 0), new Velocity(0.5f, 0)));
+            }
+            for (int i = 0; i < 11; i++) {
+                single.update();
+                sharded.update();
+            }
+            Assert.assertEquals(0, single.migrated());
+            Assert.assertTrue(sharded.migrated() > 0);
+            for (int i = 0; i < 4_000; i++) {
+                Assert.assertEquals(((Position) single.components(i).get(0)).x, ((Position) sharded.components(i).get(0)).x, 0.0);
+            }
+        }
+    }
+
+    private static ECSShards shards(int partitions, ECSShards[] ref) {
+        ECSShards shards = ECSShards.builder()
+                .partitions(partitions)
+                .key(components -> (int) ((Position) components.get(0)).x / 100)
+                .system(MovementSystem::new)
+                .system(() -> new FollowSystem(ref))
+                .build();
+        if (ref != null) {
+            ref[0] = shards;
+        }
+        return shards;
+    }
+
+    static class Position implements ECSComponent {
+
+        volatile float x, y;
+
+        Position(float x, float y) {
+            this.x = x;
+            this.y = y;
+        }
+    }
+
+    static class Velocity implements ECSComponent {
+
+        float velX, velY;
+
+        Velocity(float velX, float velY) {
+            this.velX = velX;
+            this.velY = velY;
+        }
+    }
+
+    static class Follower implements ECSComponent {
+
+        final int leader;
+
+        Follower(int leader) {
+            this.leader = leader;
+        }
+    }
+
+    static class MovementSystem implements ECSSystem {
+
+        @Override
+        public void update(List<ECSComponent> components) {
+            Position pos = (Position) components.get(0);
+            Velocity vel = (Velocity) components.get(1);
+            pos.x += vel.velX;
+            pos.y += vel.velY;
+        }
+
+        @Override
+        public ECSArchetype archetype() {
+            return ECSArchetype.builder().all(Position.class, Velocity.class).build();
+        }
+
+        @Override
+        public List<Class<? extends ECSComponent>> writes() {
+            return Collections.singletonList(Position.class);
+        }
+    }
+
+    static class FollowSystem implements ECSSystem {
+
+        final ECSShards[] shards;
+
+        FollowSystem(ECSShards[] shards) {
+            this.shards = shards;
+        }
+
+        @Override
+        public void update(List<ECSComponent> components) {
+            final Position pos = (Position) components.get(0);
+            final Position leader = (Position) shards[0].components(((Follower) components.get(1)).leader).get(0);
+            pos.y = leader.x;
+        }
+
+        @Override
+        public ECSArchetype archetype() {
+            return ECSArchetype.builder().all(Position.class, Follower.class).build();
+        }
+    }
+
+}
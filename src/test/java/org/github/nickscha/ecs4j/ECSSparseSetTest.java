@@ -0,0 +1,224 @@
+/*
+ * Copyright (C) 2019 nickscha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.github.nickscha.ecs4j;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ECSSparseSetTest {
+
+    @Test
+    public void testSparseSet() {
+        ECSSparseSet set = new ECSSparseSet();
+        Stunned stunned = new Stunned();
+        for (int i = 0; i < 100; i++) {
+            Assert.assertTrue(set.add(i * 1000, stunned));
+        }
+        Assert.assertFalse(set.add(0, new Stunned()));
+        Assert.assertEquals(100, set.size());
+
+        Assert.assertTrue(set.remove(0));
+        Assert.assertFalse(set.remove(0));
+        Assert.assertFalse(set.contains(0));
+        // the last entity fills the gap
+        Assert.assertEquals(99_000, set.entityId(0));
+        Assert.assertSame(stunned, set.get(99_000));
+        Assert.assertNull(set.get(5));
+        Assert.assertFalse(set.contains(Integer.MAX_VALUE));
+    }
+
+    @Test
+    public void testToggleKeepsComposition() {
+        ECSEntityManager em = ECSEntityManager.create().executor(ECSExecutors.callerThread()).sparse(Stunned.class);
+        StunnedSystem stunnedSystem = new StunnedSystem();
+        FreeSystem freeSystem = new FreeSystem();
+        em.createSystem(stunnedSystem).createSystem(freeSystem);
+
+        for (int i = 0; i < 1000; i++) {
+            em.createEntity(new Position());
+        }
+        for (int i = 0; i < 1000; i += 10) {
+            em.addComponent(i, new Stunned());
+        }
+        em.update();
+        Assert.assertEquals(100, stunnedSystem.entities.size());
+        Assert.assertEquals(900, freeSystem.count);
+        // sparse components are not part of the composition tables
+        Assert.assertEquals(1, em.statistics().tables().size());
+        Assert.assertEquals(100, em.statistics().components().get(Stunned.class).entities());
+
+        Assert.assertTrue(em.removeComponent(10, Stunned.class));
+        Assert.assertFalse(em.removeComponent(10, Stunned.class));
+        em.removeEntity(20);
+        stunnedSystem.entities.clear();
+        freeSystem.count = 0;
+        em.update();
+        Assert.assertEquals(98, stunnedSystem.entities.size());
+        Assert.assertFalse(stunnedSystem.entities.contains(10));
+        Assert.assertEquals(901, freeSystem.count);
+    }
+
+    @Test
+    public void testToggleVarargsEntity() {
+        ECSEntityManager em = ECSEntityManager.create().sparse(Stunned.class);
+        final int entityId = em.createEntity(new Position(), new Velocity());
+
+        for (int i = 0; i < 3; i++) {
+            em.addComponent(entityId, new Stunned());
+            Assert.assertEquals(3, em.components(entityId).size());
+            Assert.assertTrue(em.removeComponent(entityId, Stunned.class));
+            Assert.assertEquals(2, em.components(entityId).size());
+        }
+        // dense components of a varargs entity can be removed as well
+        Assert.assertTrue(em.removeComponent(entityId, Velocity.class));
+        Assert.assertEquals(1, em.components(entityId).size());
+    }
+
+    @Test
+    public void testJoinDrivenByDenseSide() {
+        ECSEntityManager em = ECSEntityManager.create().executor(ECSExecutors.callerThread()).sparse(Stunned.class);
+        StunnedSystem stunnedSystem = new StunnedSystem();
+        em.createSystem(stunnedSystem);
+        // many stunned entities without a position, few with one
+        for (int i = 0; i < 1000; i++) {
+            em.createEntity(new Stunned());
+        }
+        for (int i = 0; i < 10; i++) {
+            em.createEntity(new Position(), new Stunned());
+        }
+        em.update();
+        Assert.assertEquals(new HashSet<>(Arrays.asList(1000, 1001, 1002, 1003, 1004, 1005, 1006, 1007, 1008, 1009)), stunnedSystem.entities);
+    }
+
+    @Test
+    public void testAnyAcrossStorages() {
+        ECSEntityManager em = ECSEntityManager.create().executor(ECSExecutors.callerThread()).sparse(Stunned.class);
+        AnySystem system = new AnySystem();
+        em.createSystem(system);
+        em.createEntity(new Position());
+        em.createEntity(new Velocity());
+        em.createEntity(new Position(), new Stunned());
+        em.update();
+        Assert.assertEquals(2, system.count);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testSparseAfterUse() {
+        ECSEntityManager em = ECSEntityManager.create();
+        em.createEntity(new Stunned());
+        em.sparse(Stunned.class);
+    }
+
+    @Test
+    public void testToggleRounds() {
+        toggleRounds(ECSEntityManager.create());
+        toggleRounds(ECSEntityManager.create().sparse(Stunned.class));
+    }
+
+    private void toggleRounds(ECSEntityManager em) {
+        StunnedSystem stunned = new StunnedSystem();
+        FreeSystem free = new FreeSystem();
+        em.createSystem(stunned).createSystem(free);
+        for (int i = 0; i < 1_000; i++) {
+            em.createEntity(new Position(), new Velocity());
+        }
+        for (int round = 0; round < 10; round++) {
+            for (int i = 0; i < 1_000; i += 2) {
+                em.addComponent(i, new Stunned());
+            }
+            for (int i = 0; i < 1_000; i += 2) {
+                em.removeComponent(i, Stunned.class);
+            }
+        }
+        for (int i = 0; i < 1_000; i += 2) {
+            em.addComponent(i, new Stunned());
+        }
+        em.update();
+        Assert.assertEquals(500, stunned.entities.size());
+        Assert.assertEquals(500, free.count);
+    }
+
+    static class Position implements ECSComponent {
+
+        float x, y;
+    }
+
+    static class Velocity implements ECSComponent {
+
+        float velX, velY;
+    }
+
+    static class Stunned implements ECSComponent {
+
+        int ticks;
+    }
+
+    static class StunnedSystem implements ECSBatchSystem {
+
+        final Set<Integer> entities = new HashSet<>();
+
+        @Override
+        public void update(ECSBatch batch) {
+            for (int i = 0; i < batch.size(); i++) {
+                entities.add(batch.entityId(i));
+            }
+        }
+
+        @Override
+        public void update(List<ECSComponent> components) {
+        }
+
+        @Override
+        public ECSArchetype archetype() {
+            return ECSArchetype.builder().all(Position.class, Stunned.class).build();
+        }
+    }
+
+    static class FreeSystem implements ECSSystem {
+
+        int count;
+
+        @Override
+        public void update(List<ECSComponent> components) {
+            count++;
+        }
+
+        @Override
+        public ECSArchetype archetype() {
+            return ECSArchetype.builder().all(Position.class).none(Stunned.class).build();
+        }
+    }
+
+    static class AnySystem implements ECSSystem {
+
+        int count;
+
+        @Override
+        public void update(List<ECSComponent> components) {
+            count++;
+        }
+
+        @Override
+        public ECSArchetype archetype() {
+            return ECSArchetype.builder().any(Velocity.class, Stunned.class).build();
+        }
+    }
+
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2019 nickscha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.github.nickscha.ecs4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ECSStagingTest {
+
+    private static final int ENTITIES_PER_PRODUCER = 10_000;
+
+    private final AtomicLong counter = new AtomicLong(0);
+
+    @Test
+    public void testStagedEntityIsMergedOnUpdate() {
+        ECSEntityManager em = ECSEntityManager.create();
+        em.createSystem(new CountingSystem());
+
+        int entityId = em.stageEntity(new Position());
+        Assert.assertFalse(em.hasEntity(entityId));
+
+        em.update();
+
+        Assert.assertTrue(em.hasEntity(entityId));
+        Assert.assertEquals(1, counter.get());
+    }
+
+    @Test
+    public void testConcurrentProducers() throws InterruptedException {
+        for (int producers = 1; producers <= 4; producers *= 2) {
+            runProducers(producers);
+        }
+    }
+
+    private void runProducers(int producers) throws InterruptedException {
+        final ECSEntityManager em = ECSEntityManager.create();
+        em.createSystem(new CountingSystem());
+
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(producers);
+        final List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < producers; i++) {
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                    for (int e = 0; e < ENTITIES_PER_PRODUCER; e++) {
+                        em.stageEntity(new Position(), new Velocity());
+                    }
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done.countDown();
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+
+        // the world keeps ticking while the producers are staging
+        final AtomicBoolean ticking = new AtomicBoolean(true);
+        final Thread ticker = new Thread(() -> {
+            while (ticking.get()) {
+                em.update();
+            }
+        });
+        ticker.start();
+
+        start.countDown();
+        done.await();
+        ticking.set(false);
+        ticker.join();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        em.update();
+
+        Assert.assertEquals((long) producers * ENTITIES_PER_PRODUCER, em.statistics().entities());
+    }
+
+    class Position implements ECSComponent {
+    }
+
+    class Velocity implements ECSComponent {
+    }
+
+    class CountingSystem implements ECSSystem {
+
+        @Override
+        public void update(List<ECSComponent> components) {
+            counter.incrementAndGet();
+        }
+
+        @Override
+        public ECSArchetype archetype() {
+            return ECSArchetype.builder().all(Position.class).build();
+        }
+    }
+
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2019 nickscha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.github.nickscha.ecs4j;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ECSStatisticsTest {
+
+    @Test
+    public void testFootprint() {
+        ECSEntityManager em = ECSEntityManager.create();
+        em.createSystem(new MovementSystem());
+        for (int i = 0; i < 1000; i++) {
+            em.createEntity(new Position());
+        }
+        for (int i = 0; i < 500; i++) {
+            em.createEntity(new Position(), new Velocity());
+        }
+
+        ECSStatistics statistics = em.statistics();
+
+        Assert.assertEquals(1500, statistics.entities());
+        Assert.assertEquals(1, statistics.systems());
+
+        // header (12) + two floats (8) aligned to 8
+        ECSStatistics.Footprint positions = statistics.components().get(Position.class);
+        Assert.assertEquals(1500, positions.entities());
+        Assert.assertEquals(1500 * 24, positions.bytes());
+        Assert.assertEquals(500, statistics.components().get(Velocity.class).entities());
+
+        ECSStatistics.Footprint table = statistics.tables().get(new HashSet<>(Arrays.asList(Position.class, Velocity.class)));
+        Assert.assertEquals(500, table.entities());
+        Assert.assertTrue(table.capacity() >= 500);
+        Assert.assertEquals(1000, statistics.tables().get(Collections.singleton(Position.class)).entities());
+
+        ECSStatistics.Footprint archetype = statistics.archetypes().get(new MovementSystem().archetype());
+        Assert.assertEquals(500, archetype.entities());
+        Assert.assertTrue(archetype.bytes() >= 500 * 4);
+
+        Assert.assertTrue(statistics.idMapBytes() > 1500 * 48);
+        Assert.assertTrue(statistics.heapBytes() > statistics.idMapBytes() + 1500 * 24);
+    }
+
+    @Test
+    public void testBufferedComponentsCountTwice() {
+        ECSEntityManager em = ECSEntityManager.create();
+        em.createEntity(new Counter());
+
+        ECSStatistics.Footprint counters = em.statistics().components().get(Counter.class);
+        Assert.assertEquals(1, counters.entities());
+        Assert.assertEquals(2, counters.capacity());
+    }
+
+    @Test
+    public void testSparseBytes() {
+        ECSEntityManager em = ECSEntityManager.create().sparse(Velocity.class);
+        for (int i = 0; i < 1000; i++) {
+            em.createEntity(new Position());
+        }
+        // the empty set
+        ECSStatistics before = em.statistics();
+        Assert.assertTrue(before.sparseBytes() > 0);
+
+        for (int i = 0; i < 1000; i += 2) {
+            em.addComponent(i, new Velocity());
+        }
+        ECSStatistics statistics = em.statistics();
+
+        // the component objects and the sparse set itself
+        Assert.assertTrue(statistics.sparseBytes() > before.sparseBytes() + 500 * 24);
+        Assert.assertEquals(statistics.components().get(Velocity.class).bytes(), statistics.sparseBytes());
+        // the tables are unchanged, the sparse components are not part of them
+        Assert.assertEquals(1000, statistics.tables().get(Collections.singleton(Position.class)).entities());
+        Assert.assertEquals(before.heapBytes() + statistics.sparseBytes() - before.sparseBytes(), statistics.heapBytes());
+    }
+
+    static class Position implements ECSComponent {
+
+        float x, y;
+    }
+
+    static class Velocity implements ECSComponent {
+
+        float velX, velY;
+    }
+
+    static class Counter extends ECSBufferedComponent<Counter> {
+
+        long value;
+
+        @Override
+        protected Counter copy() {
+            Counter counter = new Counter();
+            counter.value = value;
+            return counter;
+        }
+
+        @Override
+        protected void copyFrom(Counter other) {
+            value = other.value;
+        }
+    }
+
+    static class MovementSystem implements ECSSystem {
+
+        @Override
+        public void update(List<ECSComponent> components) {
+        }
+
+        @Override
+        public ECSArchetype archetype() {
+            return ECSArchetype.builder().all(Position.class, Velocity.class).build();
+        }
+    }
+
+}